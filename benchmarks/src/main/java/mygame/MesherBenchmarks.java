@@ -0,0 +1,72 @@
+package mygame;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * These benchmarks time the meshing of a single chunk, for each workload and chunk size, with
+ * each of the meshers.  The chunk is meshed into the same buffer every time - as it would be by
+ * a meshing worker - so once the buffer has grown, anything allocated is allocated by the mesher.
+ *
+ * The chunks are cubes, unless the height is given - so -p size=16 -p height=256 benchmarks 16x256x16
+ * columns instead.  Binary meshing only takes chunks up to 64 voxels along every axis.
+ *
+ * Each benchmark reports the time per chunk, in ns/op, and with -prof gc the bytes allocated per
+ * chunk, as gc.alloc.rate.norm.  The quads per chunk are the same on every run, so rather than being
+ * measured here they're listed by QuadCounts.
+ *
+ * @author Rob O'Leary
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MesherBenchmarks {
+
+    @Param({"16", "32", "64"})
+    public int size;
+
+    /*
+     * The height of the chunks - 0 for the same as the size.
+     */
+    @Param({"0"})
+    public int height;
+
+    @Param({"NOISE", "TERRAIN", "SOLID", "CHECKERBOARD", "CAVES"})
+    public Workload workload;
+
+    @Param({"GREEDY", "BINARY", "CULLED", "NAIVE", "ADAPTIVE"})
+    public MesherType type;
+
+    private Mesher mesher;
+
+    private Chunk chunk;
+    private MeshBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+
+        mesher = type.create(null);
+        chunk = workload.create(size, height == 0 ? size : height, size, 1L);
+        buffer = new MeshBuffer(1, size * size);
+    }
+
+    @Benchmark
+    public MeshBuffer mesh() {
+
+        return mesher.mesh(chunk, buffer);
+    }
+}
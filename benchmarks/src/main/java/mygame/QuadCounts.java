@@ -0,0 +1,42 @@
+package mygame;
+
+/**
+ * This lists the quads in the mesh of each benchmark chunk, from each of the meshers - alongside the
+ * number of exposed faces in the chunk.  The counts are the same on every run, so they're listed once
+ * here rather than measured by the benchmarks.
+ *
+ *    java -cp benchmarks/target/benchmarks.jar mygame.QuadCounts
+ *
+ * @author Rob O'Leary
+ */
+public class QuadCounts {
+
+    public static void main(final String[] args) {
+
+        final MeshBuffer buffer = new MeshBuffer(1, 1);
+
+        System.out.printf("%-14s %6s %12s", "workload", "size", "faces");
+
+        for (MesherType type : MesherType.values()) {
+            System.out.printf(" %12s", type.name().toLowerCase());
+        }
+
+        System.out.println();
+
+        for (Workload workload : Workload.values()) {
+
+            for (int size : new int[]{ 16, 32, 64 }) {
+
+                final Chunk chunk = workload.create(size, 1L);
+
+                System.out.printf("%-14s %6d %12d", workload, size, chunk.getExposedFaceCount());
+
+                for (MesherType type : MesherType.values()) {
+                    System.out.printf(" %12d", type.create(null).mesh(chunk, buffer).getQuadCount());
+                }
+
+                System.out.println();
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package mygame;
+
+import java.util.Random;
+
+/**
+ * These are the kinds of chunk the benchmarks mesh - each fills a chunk deterministically, so
+ * that every run meshes exactly the same voxels.
+ *
+ * @author Rob O'Leary
+ */
+public enum Workload {
+
+    /**
+     * Every voxel is a random one of 3 types, or empty - quads barely merge at all.
+     */
+    NOISE {
+        @Override
+        void fill(final Chunk chunk, final Random random) {
+
+            for (int x = 0; x < chunk.getWidth(); x++) {
+                for (int y = 0; y < chunk.getHeight(); y++) {
+                    for (int z = 0; z < chunk.getDepth(); z++) {
+
+                        final int type = random.nextInt(4);
+
+                        chunk.set(x, y, z, type == 0 ? null : FACES[type]);
+                    }
+                }
+            }
+        }
+    },
+
+    /**
+     * Rolling hills from the terrain generator, with the surface running through the middle of the
+     * height of the chunk.  This is the smooth kind of chunk that greedy meshing does best on.
+     */
+    TERRAIN {
+        @Override
+        void fill(final Chunk chunk, final Random random) {
+
+            final int height = chunk.getHeight();
+
+            new TerrainGenerator(random.nextLong(), height / 2, height / 4).fill(chunk, 0, 0, 0);
+        }
+    },
+
+    /**
+     * Every voxel is stone - only the border of the chunk has faces.
+     */
+    SOLID {
+        @Override
+        void fill(final Chunk chunk, final Random random) {
+
+            for (int x = 0; x < chunk.getWidth(); x++) {
+                for (int y = 0; y < chunk.getHeight(); y++) {
+                    for (int z = 0; z < chunk.getDepth(); z++) {
+
+                        chunk.set(x, y, z, FACES[3]);
+                    }
+                }
+            }
+        }
+    },
+
+    /**
+     * Alternating voxels and air in all 3 directions - every face of every voxel is exposed and
+     * nothing merges, which is the worst case for any mesher.
+     */
+    CHECKERBOARD {
+        @Override
+        void fill(final Chunk chunk, final Random random) {
+
+            for (int x = 0; x < chunk.getWidth(); x++) {
+                for (int y = 0; y < chunk.getHeight(); y++) {
+                    for (int z = 0; z < chunk.getDepth(); z++) {
+
+                        if (((x + y + z) & 1) == 0) {
+                            chunk.set(x, y, z, FACES[3]);
+                        }
+                    }
+                }
+            }
+        }
+    },
+
+    /**
+     * Stone from deep below the surface of the terrain generator, with caves and ore veins
+     * running through it.
+     */
+    CAVES {
+        @Override
+        void fill(final Chunk chunk, final Random random) {
+
+            final int height = chunk.getHeight();
+
+            new TerrainGenerator(random.nextLong(), height * 4, height / 4).fill(chunk, 0, 0, 0);
+        }
+    };
+
+    /*
+     * These are the faces the workloads are built from, by type - as in TerrainGenerator, 1 is grass,
+     * 2 dirt and 3 stone.
+     */
+    private static final VoxelFace[] FACES = new VoxelFace[4];
+
+    static {
+
+        for (int type = 1; type < FACES.length; type++) {
+
+            FACES[type] = new VoxelFace();
+            FACES[type].type = type;
+        }
+    }
+
+    /**
+     * This function creates a cubic chunk of the given size filled with this workload.
+     *
+     * @param size
+     * @param seed
+     * @return
+     */
+    public Chunk create(final int size, final long seed) {
+
+        return create(size, size, size, seed);
+    }
+
+    /**
+     * This function creates a chunk of the given width, height and depth filled with this workload.
+     *
+     * @param width
+     * @param height
+     * @param depth
+     * @param seed
+     * @return
+     */
+    public Chunk create(final int width, final int height, final int depth, final long seed) {
+
+        final Chunk chunk = new Chunk(width, height, depth);
+
+        fill(chunk, new Random(seed));
+
+        return chunk;
+    }
+
+    abstract void fill(Chunk chunk, Random random);
+}
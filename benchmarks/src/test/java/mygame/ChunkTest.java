@@ -0,0 +1,179 @@
+package mygame;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * These check the counts a chunk keeps up to date as it's edited - the solid and uniform layers along
+ * each axis, the exposed faces of each voxel, and whether the chunk is empty or uniform - against
+ * counting them from scratch, over random edits to the chunk and its padding.
+ *
+ * @author Rob O'Leary
+ */
+public class ChunkTest {
+
+    @Test
+    public void fewKeys() {
+
+        check(new Random(1L), 3);
+    }
+
+    @Test
+    public void manyKeys() {
+
+        check(new Random(2L), 300);
+    }
+
+    @Test
+    public void neighbours() {
+
+        final Random random = new Random(3L);
+        final TerrainGenerator generator = new TerrainGenerator(6L);
+
+        final Chunk chunk = generator.generate(0, 0, 0, 9, 5, 7);
+
+        for (int update = 0; update < 40; update++) {
+
+            final int side = random.nextInt(6);
+            final int[] size = new int[]{ 9, 5, 7 };
+
+            size[axis(side)] = 1 + random.nextInt(6);
+
+            chunk.setNeighbour(side, random.nextInt(4) == 0 ? null : generator.generate(random.nextInt(3), random.nextInt(3) - 1, random.nextInt(3), size[0], size[1], size[2]));
+
+            assertCounts(chunk);
+        }
+    }
+
+    /**
+     * This function makes random edits to chunks of random sizes, with the given number of keys -
+     * every so often checking the counts, and always at the end.
+     */
+    private static void check(final Random random, final int keys) {
+
+        final VoxelFace[] faces = IncrementalChunkMeshTest.faces(keys);
+
+        for (int trial = 0; trial < 12; trial++) {
+
+            final int[] size = new int[]{ 1 + random.nextInt(9), 1 + random.nextInt(9), 1 + random.nextInt(9) };
+            final Chunk chunk = new Chunk(size[0], size[1], size[2]);
+
+            /*
+             * Editing only a few keys at a time lets layers fill up with a single key, and then lose it.
+             */
+            final int used = 1 + random.nextInt(Math.min(keys, 4));
+            final int first = random.nextInt(keys - used + 1);
+
+            for (int edit = 0; edit < 3000; edit++) {
+
+                final VoxelFace face = random.nextInt(4) == 0 ? null : faces[first + random.nextInt(used)];
+
+                chunk.set(random.nextInt(size[0] + 2) - 1, random.nextInt(size[1] + 2) - 1, random.nextInt(size[2] + 2) - 1, face);
+
+                if (edit % 100 == 0) {
+                    assertCounts(chunk);
+                }
+            }
+
+            assertCounts(chunk);
+        }
+    }
+
+    private static void assertCounts(final Chunk chunk) {
+
+        final int[] size = new int[]{ chunk.getWidth(), chunk.getHeight(), chunk.getDepth() };
+        final int[] x = new int[3];
+
+        for (int d = 0; d < 3; d++) {
+
+            final int u = (d + 1) % 3;
+            final int v = (d + 2) % 3;
+
+            for (x[d] = -1; x[d] <= size[d]; x[d]++) {
+
+                x[u] = 0;
+                x[v] = 0;
+
+                int solid = 0;
+                int uniform = chunk.paletteIndex(chunk.index(x[0], x[1], x[2]));
+
+                for (x[u] = 0; x[u] < size[u]; x[u]++) {
+
+                    for (x[v] = 0; x[v] < size[v]; x[v]++) {
+
+                        final int p = chunk.paletteIndex(chunk.index(x[0], x[1], x[2]));
+
+                        if (p != 0) {
+                            solid++;
+                        }
+
+                        if (p != uniform) {
+                            uniform = -1;
+                        }
+                    }
+                }
+
+                assertEquals("Solid voxels in layer " + x[d] + " along " + d, solid, chunk.getSolidCount(d, x[d]));
+                assertEquals("Uniform key of layer " + x[d] + " along " + d, uniform, chunk.getUniformLayer(d, x[d]));
+            }
+        }
+
+        int exposed = 0;
+        int first = chunk.get(0, 0, 0);
+        boolean uniform = true;
+
+        for (x[2] = 0; x[2] < size[2]; x[2]++) {
+
+            for (x[1] = 0; x[1] < size[1]; x[1]++) {
+
+                for (x[0] = 0; x[0] < size[0]; x[0]++) {
+
+                    final int key = chunk.get(x[0], x[1], x[2]);
+                    final int faces = exposedFaces(chunk, x[0], x[1], x[2]);
+
+                    assertEquals("Exposed faces of " + x[0] + "," + x[1] + "," + x[2], faces, chunk.getExposedFaces(x[0], x[1], x[2]));
+
+                    exposed += Integer.bitCount(faces);
+                    uniform &= key == first;
+                }
+            }
+        }
+
+        assertEquals(exposed, chunk.getExposedFaceCount());
+        assertEquals(uniform, chunk.isUniform());
+        assertEquals(uniform && first == 0, chunk.isEmpty());
+    }
+
+    /**
+     * This function works out the exposed faces of a voxel from its neighbours - see Chunk.
+     */
+    private static int exposedFaces(final Chunk chunk, final int x, final int y, final int z) {
+
+        final int key = chunk.get(x, y, z);
+
+        if (key == 0 || VoxelFace.isTransparent(key)) {
+            return 0;
+        }
+
+        int faces = 0;
+
+        faces |= chunk.get(x - 1, y, z) != key ? 1 << VoxelFace.WEST   : 0;
+        faces |= chunk.get(x + 1, y, z) != key ? 1 << VoxelFace.EAST   : 0;
+        faces |= chunk.get(x, y - 1, z) != key ? 1 << VoxelFace.BOTTOM : 0;
+        faces |= chunk.get(x, y + 1, z) != key ? 1 << VoxelFace.TOP    : 0;
+        faces |= chunk.get(x, y, z - 1) != key ? 1 << VoxelFace.SOUTH  : 0;
+        faces |= chunk.get(x, y, z + 1) != key ? 1 << VoxelFace.NORTH  : 0;
+
+        return faces;
+    }
+
+    private static int axis(final int side) {
+
+        if (side == VoxelFace.WEST || side == VoxelFace.EAST)       { return 0; }
+        if (side == VoxelFace.BOTTOM || side == VoxelFace.TOP)      { return 1; }
+
+        return 2;
+    }
+}
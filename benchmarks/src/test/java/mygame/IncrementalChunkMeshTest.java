@@ -0,0 +1,135 @@
+package mygame;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * These check that the incremental mesh of a chunk always holds the same quads as meshing the
+ * chunk from scratch, over random edits - inside the chunk, in its padding, and to its neighbours.
+ *
+ * @author Rob O'Leary
+ */
+public class IncrementalChunkMeshTest {
+
+    private static final VoxelFace[] FACES = faces(5);
+
+    @Test
+    public void editsMatchFullRemesh() {
+
+        final Random random = new Random(1L);
+        final ChunkMesher mesher = new ChunkMesher();
+
+        for (int[] size : new int[][]{ {16, 16, 16}, {1, 1, 1}, {7, 3, 12}, {33, 4, 17} }) {
+
+            final Chunk chunk = new TerrainGenerator(7L).generate(0, 0, 0, size[0], size[1], size[2]);
+            final IncrementalChunkMesh mesh = new IncrementalChunkMesh(mesher, chunk, 1);
+
+            for (int edit = 0; edit < 400; edit++) {
+
+                mesh.set(random.nextInt(size[0]), random.nextInt(size[1]), random.nextInt(size[2]), face(random));
+
+                if (edit % 20 == 0) {
+                    assertMatches(mesher, chunk, mesh);
+                }
+            }
+
+            assertMatches(mesher, chunk, mesh);
+        }
+    }
+
+    @Test
+    public void paddingEditsMatchFullRemesh() {
+
+        final Random random = new Random(2L);
+        final ChunkMesher mesher = new ChunkMesher();
+
+        final Chunk chunk = new TerrainGenerator(3L).generate(0, 0, 0, 12);
+        final IncrementalChunkMesh mesh = new IncrementalChunkMesh(mesher, chunk, 1);
+
+        for (int edit = 0; edit < 600; edit++) {
+
+            /*
+             * Every coordinate runs over the padding as well, so edits land on the faces, edges and
+             * corners of the padding as well as inside the chunk.
+             */
+            mesh.set(random.nextInt(14) - 1, random.nextInt(14) - 1, random.nextInt(14) - 1, face(random));
+
+            if (edit % 10 == 0) {
+                assertMatches(mesher, chunk, mesh);
+            }
+        }
+    }
+
+    @Test
+    public void neighbourUpdatesMatchFullRemesh() {
+
+        final Random random = new Random(3L);
+        final ChunkMesher mesher = new ChunkMesher();
+        final TerrainGenerator generator = new TerrainGenerator(4L);
+
+        final Chunk chunk = generator.generate(0, 0, 0, 10);
+        final IncrementalChunkMesh mesh = new IncrementalChunkMesh(mesher, chunk, 1);
+
+        assertMatches(mesher, chunk, mesh);
+
+        for (int update = 0; update < 60; update++) {
+
+            final int side = random.nextInt(6);
+            final Chunk neighbour = random.nextInt(4) == 0 ? null : generator.generate(random.nextInt(5), random.nextInt(3) - 1, random.nextInt(5), 10);
+
+            mesh.setNeighbour(side, neighbour);
+            mesh.set(random.nextInt(10), random.nextInt(10), random.nextInt(10), face(random));
+
+            assertMatches(mesher, chunk, mesh);
+        }
+    }
+
+    @Test
+    public void editsOutsideThePaddingChangeNothing() {
+
+        final ChunkMesher mesher = new ChunkMesher();
+        final Chunk chunk = new TerrainGenerator(5L).generate(0, 0, 0, 8);
+        final IncrementalChunkMesh mesh = new IncrementalChunkMesh(mesher, chunk, 1);
+
+        mesh.update();
+
+        for (int[] position : new int[][]{ {-2, 0, 0}, {0, 9, 0}, {0, 0, -5}, {8, 8, 10} }) {
+
+            try {
+                mesh.set(position[0], position[1], position[2], FACES[0]);
+                fail("Expected an edit at " + position[0] + "," + position[1] + "," + position[2] + " to be rejected");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+
+        assertFalse(mesh.isDirty());
+        assertMatches(mesher, chunk, mesh);
+    }
+
+    private static void assertMatches(final ChunkMesher mesher, final Chunk chunk, final IncrementalChunkMesh mesh) {
+
+        assertEquals(Quads.of(mesher.greedy(chunk, 1)), Quads.of(mesh.update()));
+    }
+
+    private static VoxelFace face(final Random random) {
+
+        return random.nextInt(4) == 0 ? null : FACES[random.nextInt(FACES.length)];
+    }
+
+    static VoxelFace[] faces(final int count) {
+
+        final VoxelFace[] faces = new VoxelFace[count];
+
+        for (int i = 0; i < count; i++) {
+            faces[i] = new VoxelFace();
+            faces[i].type = i + 1;
+        }
+
+        return faces;
+    }
+}
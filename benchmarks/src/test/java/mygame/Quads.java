@@ -0,0 +1,43 @@
+package mygame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This turns the quads of a mesh into a form two meshes can be compared in - the positions and color
+ * of each quad, sorted, so that meshes holding the same quads in a different order are equal.
+ *
+ * @author Rob O'Leary
+ */
+final class Quads {
+
+    private Quads() {}
+
+    static List<String> of(final MeshBuffer buffer) {
+
+        final float[] positions = buffer.getPositions();
+        final float[] colors = buffer.getColors();
+
+        final List<String> quads = new ArrayList<String>();
+
+        for (int quad = 0; quad < buffer.getQuadCount(); quad++) {
+
+            final StringBuilder builder = new StringBuilder();
+
+            for (int i = quad * 12; i < quad * 12 + 12; i++) {
+                builder.append(positions[i]).append(',');
+            }
+
+            for (int i = quad * 16; i < quad * 16 + 4; i++) {
+                builder.append(' ').append(colors[i]);
+            }
+
+            quads.add(builder.toString());
+        }
+
+        Collections.sort(quads);
+
+        return quads;
+    }
+}
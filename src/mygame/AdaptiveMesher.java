@@ -0,0 +1,157 @@
+package mygame;
+
+/**
+ * This mesher picks a mesher for each chunk, from a few statistics which the chunk keeps up to date
+ * as it's edited, so that picking costs nothing next to meshing:
+ *
+ *  - the number of exposed faces per voxel - how much surface the chunk has,
+ *  - the number of exposed faces per voxel along each axis - that is, the transitions between
+ *    different keys along it, which break up the faces of the slices across the other axes,
+ *  - the size of its palette - the number of distinct keys it holds.
+ *
+ * Greedy meshing pays off on smooth chunks, where it merges thousands of faces into a few quads, but
+ * on noisy chunks - ore-heavy caves, or player builds - the faces barely merge, and it spends its time
+ * sweeping for merges it never finds.  So a chunk is routed:
+ *
+ *  - to greedy meshing, if it's uniform - only its border can have faces, which merge completely,
+ *  - if every axis has at least noisyDensity exposed faces per voxel along it, the faces barely merge
+ *    in any direction - so to binary greedy meshing, if the chunk is no more than 64 voxels along
+ *    any axis and has no more than binaryPaletteSize keys, since the bitmasks are kept per key, and
+ *    with only a few of them merging with bitmasks costs hardly more than not merging at all - or
+ *    else to the culled mesher, which produces almost as few quads as greedy meshing would,
+ *  - otherwise to binary greedy meshing, if the chunk is no more than 64 voxels along any axis, or
+ *    else to greedy meshing.  Both produce the same quads, but on smooth chunks - terrain, say - the
+ *    bitmasks cull and merge whole rows at a time, and beat sweeping the slices face by face.
+ *
+ * Chunks with few faces are meshed with merging too - they may be few because the surface is smooth,
+ * as a flat slab is, and not meshing a smooth surface without merging is the whole point.
+ *
+ * The thresholds trade the time taken to mesh a chunk against the triangles in its mesh, and can be
+ * changed at any time - the benchmarks show where each mesher wins.  The chunks routed to each mesher
+ * are counted in the metrics, if there are any.
+ *
+ * @author Rob O'Leary
+ */
+public class AdaptiveMesher implements Mesher {
+
+    private final ChunkMesher greedy;
+    private final Mesher binary;
+    private final CulledMesher culled;
+
+    private final MeshingMetrics metrics;
+
+    private volatile double noisyDensity = 0.75;
+    private volatile int binaryPaletteSize = 4;
+
+    public AdaptiveMesher() {
+
+        this(null);
+    }
+
+    /**
+     * Creates a mesher which records the cost of meshing every chunk, and the mesher it was routed
+     * to, in the given metrics - or none if they're null.
+     *
+     * @param metrics
+     */
+    public AdaptiveMesher(final MeshingMetrics metrics) {
+
+        this.greedy = new ChunkMesher(ChunkMesher.Parallelism.NONE, null, metrics);
+        this.binary = greedy.binary();
+        this.culled = new CulledMesher(metrics);
+        this.metrics = metrics;
+    }
+
+    /**
+     * Creates a mesher with the given thresholds - see above.
+     *
+     * @param metrics
+     * @param noisyDensity
+     * @param binaryPaletteSize
+     */
+    public AdaptiveMesher(final MeshingMetrics metrics,
+                          final double noisyDensity,
+                          final int binaryPaletteSize) {
+
+        this(metrics);
+
+        setNoisyDensity(noisyDensity);
+        setBinaryPaletteSize(binaryPaletteSize);
+    }
+
+    public String getName() { return "adaptive"; }
+
+    public MeshBuffer mesh(final Chunk chunk, final MeshBuffer buffer) {
+
+        final MesherType type = route(chunk);
+
+        if (metrics != null) {
+            metrics.recordRoute(type);
+        }
+
+        switch (type) {
+            case BINARY: return binary.mesh(chunk, buffer);
+            case CULLED: return culled.mesh(chunk, buffer);
+            default:     return greedy.mesh(chunk, buffer);
+        }
+    }
+
+    /**
+     * This function works out which mesher a chunk would be meshed with - GREEDY, BINARY or CULLED.
+     *
+     * @param chunk
+     * @return
+     */
+    public MesherType route(final Chunk chunk) {
+
+        if (chunk.isUniform()) {
+            return MesherType.GREEDY;
+        }
+
+        final double volume = chunk.getVolume();
+        final boolean fitsBinary = ChunkMesher.fitsBinary(chunk);
+
+        final int transitions = Math.min(chunk.getExposedFaceCount(0),
+                                Math.min(chunk.getExposedFaceCount(1), chunk.getExposedFaceCount(2)));
+
+        if (transitions >= noisyDensity * volume) {
+            return fitsBinary && chunk.getPaletteSize() <= binaryPaletteSize ? MesherType.BINARY : MesherType.CULLED;
+        }
+
+        return fitsBinary ? MesherType.BINARY : MesherType.GREEDY;
+    }
+
+    public double getNoisyDensity() { return noisyDensity; }
+
+    /**
+     * Sets the exposed faces per voxel, along every axis, from which a chunk is meshed without
+     * merging - there are at most 2, when no voxel matches either of its neighbours.
+     *
+     * @param noisyDensity
+     */
+    public void setNoisyDensity(final double noisyDensity) {
+
+        if (noisyDensity < 0) {
+            throw new IllegalArgumentException("The noisy density must not be negative, not " + noisyDensity);
+        }
+
+        this.noisyDensity = noisyDensity;
+    }
+
+    public int getBinaryPaletteSize() { return binaryPaletteSize; }
+
+    /**
+     * Sets the largest palette - including the empty key - of a noisy chunk meshed with bitmasks.  0 never
+     * meshes with bitmasks.
+     *
+     * @param binaryPaletteSize
+     */
+    public void setBinaryPaletteSize(final int binaryPaletteSize) {
+
+        if (binaryPaletteSize < 0) {
+            throw new IllegalArgumentException("The binary palette size must not be negative, not " + binaryPaletteSize);
+        }
+
+        this.binaryPaletteSize = binaryPaletteSize;
+    }
+}
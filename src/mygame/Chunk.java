@@ -0,0 +1,668 @@
+package mygame;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the voxel data of a single chunk in the form the mesher reads it - a flat
+ * array with a one voxel border of padding all the way round.  So a 32x32x32 chunk is stored as
+ * 34x34x34 voxels.  The chunk needn't be a cube - its width, height and depth, along x, y and z,
+ * are independent, so that a world can be cut into tall columns such as 16x256x16.
+ *
+ * The padding holds the border layers of the 6 neighbouring chunks, copied in with setNeighbour or
+ * set directly - or empty voxels where there's no neighbour.  Since the neighbour of every voxel is always in the array,
+ * the mesher never needs to check whether it's on the border of the chunk - it just steps through the
+ * array by the stride of each axis.
+ *
+ * The voxels aren't stored as VoxelFace instances, or even as packed keys (see VoxelFace.pack) - the
+ * chunk keeps a palette of the distinct keys it holds, and each voxel is stored as an index into the
+ * palette, bit-packed into an array of longs.  The indexes start out 4 bits wide, and are widened to 8,
+ * 16 and then 32 bits as the palette outgrows them - so a chunk of up to 16 distinct keys costs half a
+ * byte per voxel.  Palette index 0 is always key 0, an empty voxel.  The faces are packed without a side,
+ * since in this demo a voxel is the same on every side.
+ *
+ * Since every key appears in the palette only once, two voxels are equal exactly when their palette
+ * indexes are - so the mesher compares the indexes, and only looks up the key of a face when it emits it.
+ *
+ * The chunk also counts how many of its voxels - not counting the padding - use each palette entry, so
+ * it always knows whether it's empty or uniform - all one key.  The mesher uses this to skip the sweep
+ * of such chunks, since they have no faces inside them.  Every layer of voxels along each axis - including
+ * the layers of padding - keeps a few counts of its own too, so that the mesher can skip the slices
+ * between two uniform layers of the same key, or in front of an empty layer, even when the chunk isn't
+ * uniform.
+ *
+ * Finally, the chunk keeps a mask of the exposed faces of every voxel - bit s is set when the face on
+ * side s (see VoxelFace) will be drawn, that is when the voxel isn't empty or transparent and its
+ * neighbour on that side has a different key.  The masks are kept up to date on every write, including
+ * the padding, so the mesher builds its mask from them rather than comparing voxels - and the number of
+ * exposed faces in the chunk is known without meshing it.  They're counted along each axis too, which
+ * tells how noisy the chunk is - see AdaptiveMesher.
+ *
+ * Entries are never removed from the palette - a key which is overwritten keeps its entry, so a chunk
+ * which is edited heavily can end up with wider indexes than it needs.
+ *
+ * @author Rob O'Leary
+ */
+public class Chunk {
+
+    private static final int INITIAL_BITS = 4;
+
+    /*
+     * These are the bits of the sides which face along each axis, in a mask of exposed faces.
+     */
+    private static final int[] AXIS_SIDES = {
+        1 << VoxelFace.EAST  | 1 << VoxelFace.WEST,
+        1 << VoxelFace.TOP   | 1 << VoxelFace.BOTTOM,
+        1 << VoxelFace.NORTH | 1 << VoxelFace.SOUTH
+    };
+
+    /*
+     * These are the width, height and depth of the chunk, and the same with the padding.
+     */
+    private final int[] sizes;
+    private final int[] padded;
+    private final int volume;
+
+    /*
+     * These are the steps through the array along x, y and z.
+     */
+    private final int[] strides;
+
+    /*
+     * This is the palette - the distinct keys in the chunk, of which the first paletteSize are used.
+     */
+    private int[] palette = new int[1 << INITIAL_BITS];
+    private int paletteSize = 1;
+
+    /*
+     * This is a hash table from each key to its palette index, so that storing a voxel never scans
+     * the palette - which only grows, however heavily the chunk is edited.  It's open addressed, with
+     * linear probing - each slot holds the palette index of a key plus one, or 0 if it's free - and
+     * twice the size of the palette, so it's never more than half full.
+     */
+    private int[] lookup = new int[2 << INITIAL_BITS];
+
+    /*
+     * These are the number of voxels using each palette entry, and the palette index of the
+     * voxels if they're all the same - or -1 if they're not.
+     */
+    private int[] counts = new int[1 << INITIAL_BITS];
+    private int uniform = 0;
+
+    /*
+     * These are kept for each layer along each axis, at layer + 1 - the number of voxels in the layer
+     * which aren't empty, and a reference palette index along with the number of voxels in the layer
+     * which hold it.  The layer is uniform when every one of its voxels holds the reference.  A layer
+     * along d is the voxels with that coordinate on d - areas[d] of them.
+     *
+     * That's 3 ints per layer however many keys the chunk has held, where a count of every palette entry
+     * in every layer would grow with the palette - and never shrink, since entries are never removed.
+     * The price is that when the last voxel holding the reference is overwritten, the layer is swept to
+     * count the new key, which becomes the reference - but a layer only loses its reference that way once
+     * for every time it gains one.
+     */
+    private final int[][] layerSolid = new int[3][];
+    private final int[][] layerReference = new int[3][];
+    private final int[][] layerMatches = new int[3][];
+    private final int[] areas;
+
+    /*
+     * These are the exposed faces of each voxel, at the same indexes as the voxels - the padding
+     * is always 0, since its faces belong to the neighbours - and the step through the array
+     * from a voxel to its neighbour on each side - and the number of exposed faces in the chunk,
+     * in all and along each axis.
+     */
+    private final byte[] faces;
+    private final int[] sideStrides;
+    private int exposed;
+    private final int[] axisExposed = new int[3];
+
+    /*
+     * These are the palette indexes of the voxels - each index is bits wide, and 64 / bits of
+     * them are packed into each long, lowest bits first.  Since the width is always a power of
+     * two, an index never straddles two longs.
+     */
+    private int bits;
+    private int indexesPerWord;
+    private int wordShift;
+    private long valueMask;
+    private long[] words;
+
+    /**
+     * Creates an empty cubic chunk of the given size, without neighbours.
+     *
+     * @param size
+     */
+    public Chunk(final int size) {
+
+        this(size, size, size);
+    }
+
+    /**
+     * Creates an empty chunk of the given width, height and depth - along x, y and z - without
+     * neighbours.
+     *
+     * @param width
+     * @param height
+     * @param depth
+     */
+    public Chunk(final int width, final int height, final int depth) {
+
+        if (width < 1 || height < 1 || depth < 1) {
+            throw new IllegalArgumentException("Chunk of " + width + "x" + height + "x" + depth + " voxels");
+        }
+
+        this.sizes = new int[]{ width, height, depth };
+        this.padded = new int[]{ width + 2, height + 2, depth + 2 };
+        this.volume = width * height * depth;
+        this.areas = new int[]{ height * depth, depth * width, width * height };
+        this.strides = new int[]{ 1, padded[0], padded[0] * padded[1] };
+        this.faces = new byte[padded[0] * padded[1] * padded[2]];
+
+        this.sideStrides = new int[6];
+        this.sideStrides[VoxelFace.WEST]   = -strides[0];
+        this.sideStrides[VoxelFace.EAST]   =  strides[0];
+        this.sideStrides[VoxelFace.BOTTOM] = -strides[1];
+        this.sideStrides[VoxelFace.TOP]    =  strides[1];
+        this.sideStrides[VoxelFace.SOUTH]  = -strides[2];
+        this.sideStrides[VoxelFace.NORTH]  =  strides[2];
+
+        resize(INITIAL_BITS);
+
+        counts[0] = volume;
+        insert(0, 0);
+
+        for (int d = 0; d < 3; d++) {
+
+            layerSolid[d] = new int[padded[d]];
+            layerReference[d] = new int[padded[d]];
+            layerMatches[d] = new int[padded[d]];
+
+            Arrays.fill(layerMatches[d], areas[d]);
+        }
+    }
+
+    public int getWidth() { return sizes[0]; }
+
+    public int getHeight() { return sizes[1]; }
+
+    public int getDepth() { return sizes[2]; }
+
+    /**
+     * The size of the chunk along the given axis - 0 for x, 1 for y and 2 for z.
+     *
+     * @param d
+     * @return
+     */
+    public int getSize(final int d) { return sizes[d]; }
+
+    /**
+     * The number of voxels in a layer along the given axis - which is the number of cells in the
+     * mask of a slice along it.
+     *
+     * @param d
+     * @return
+     */
+    public int getArea(final int d) { return areas[d]; }
+
+    /**
+     * The number of voxels in the chunk, not counting the padding.
+     *
+     * @return
+     */
+    public int getVolume() { return volume; }
+
+    /**
+     * This function sets a single voxel of the chunk - null leaves the voxel empty.  The coordinates
+     * run from -1 to the size along each axis, so the padding can be set too - for example by a
+     * generator which knows what the neighbouring chunks will hold.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param face
+     */
+    public void set(final int x, final int y, final int z, final VoxelFace face) {
+
+        store(x, y, z, face == null ? 0 : face.pack(0));
+    }
+
+    /**
+     * Whether every voxel of the chunk is empty - the padding isn't taken into account.
+     *
+     * @return
+     */
+    public boolean isEmpty() { return uniform == 0; }
+
+    /**
+     * Whether every voxel of the chunk has the same key - which includes an empty chunk.  The
+     * padding isn't taken into account.
+     *
+     * @return
+     */
+    public boolean isUniform() { return uniform >= 0; }
+
+    /**
+     * The palette index of every voxel in a layer along the given axis if they're all the same,
+     * or -1 if they're not - the layers run from -1 to size, taking in the padding.
+     *
+     * @param d
+     * @param layer
+     * @return
+     */
+    int getUniformLayer(final int d, final int layer) {
+
+        return layerMatches[d][layer + 1] == areas[d] ? layerReference[d][layer + 1] : -1;
+    }
+
+    /**
+     * The number of voxels in a layer along the given axis which aren't empty - the layers run
+     * from -1 to size, taking in the padding.
+     *
+     * @param d
+     * @param layer
+     * @return
+     */
+    public int getSolidCount(final int d, final int layer) { return layerSolid[d][layer + 1]; }
+
+    /**
+     * The exposed faces of a voxel - bit s is set if the face on side s will be drawn.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public int getExposedFaces(final int x, final int y, final int z) { return faces[index(x, y, z)]; }
+
+    /**
+     * The number of faces in the chunk which will be drawn - which is the number of quads a
+     * mesher that only culled faces would produce, and the most that greedy meshing can produce.
+     *
+     * @return
+     */
+    public int getExposedFaceCount() { return exposed; }
+
+    /**
+     * The number of exposed faces which face along the given axis - so for axis 0, the number of
+     * EAST and WEST faces.  Each is a transition along that axis between a voxel and a neighbour
+     * of a different key.
+     *
+     * @param d
+     * @return
+     */
+    public int getExposedFaceCount(final int d) { return axisExposed[d]; }
+
+    /**
+     * This function returns the key of a voxel - the coordinates run from -1 to the size along
+     * each axis, so the padding can be read too.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public int get(final int x, final int y, final int z) {
+
+        return palette[paletteIndex(index(x, y, z))];
+    }
+
+    /**
+     * This function copies the layer of the neighbouring chunk which touches this one into the
+     * padding on the given side - or clears the padding if the neighbour is null.  The copy isn't
+     * kept up to date, so it needs to be made again whenever the border of the neighbour changes.
+     * The neighbour must be the same size as this chunk across the side, but can be any size along it.
+     *
+     * @param side
+     * @param neighbour
+     */
+    public void setNeighbour(final int side, final Chunk neighbour) {
+
+        /*
+         * The axis of the side, the layer of padding on it, and the layer of the neighbour which touches it.
+         */
+        final int d;
+        final int layer;
+
+        if (side == VoxelFace.WEST || side == VoxelFace.EAST)         { d = 0; }
+        else if (side == VoxelFace.BOTTOM || side == VoxelFace.TOP)   { d = 1; }
+        else                                                          { d = 2; }
+
+        if (side == VoxelFace.WEST || side == VoxelFace.BOTTOM || side == VoxelFace.SOUTH) {
+            layer = -1;
+        } else {
+            layer = sizes[d];
+        }
+
+        final int u = (d + 1) % 3;
+        final int v = (d + 2) % 3;
+
+        if (neighbour != null && (neighbour.sizes[u] != sizes[u] || neighbour.sizes[v] != sizes[v])) {
+            throw new IllegalArgumentException("Neighbour of " + neighbour.describe() + " voxels for chunk of " + describe() + " voxels");
+        }
+
+        final int source = layer < 0 && neighbour != null ? neighbour.sizes[d] - 1 : 0;
+
+        final int[] x = new int []{0,0,0};
+
+        for (x[v] = 0; x[v] < sizes[v]; x[v]++) {
+
+            for (x[u] = 0; x[u] < sizes[u]; x[u]++) {
+
+                x[d] = source;
+
+                final int key = neighbour == null ? 0 : neighbour.get(x[0], x[1], x[2]);
+
+                x[d] = layer;
+
+                store(x[0], x[1], x[2], key);
+            }
+        }
+    }
+
+    /**
+     * The index of a voxel in the array - the coordinates run from -1 to the size along each axis.
+     */
+    int index(final int x, final int y, final int z) {
+
+        return (x + 1) + (y + 1) * strides[1] + (z + 1) * strides[2];
+    }
+
+    /**
+     * The step through the array along the given axis.
+     */
+    int stride(final int axis) { return strides[axis]; }
+
+    /**
+     * The palette index of the voxel at the given index in the array.
+     */
+    int paletteIndex(final int index) {
+
+        return (int) ((words[index >>> wordShift] >>> ((index & (indexesPerWord - 1)) * bits)) & valueMask);
+    }
+
+    /**
+     * The exposed face masks, which the mesher reads directly.
+     */
+    byte[] faces() { return faces; }
+
+    /**
+     * The palette itself, which the mesher reads directly - only the first getPaletteSize() keys
+     * are used.  The array is replaced when the palette grows, so it mustn't be kept across edits.
+     */
+    int[] palette() { return palette; }
+
+    public int getPaletteSize() { return paletteSize; }
+
+    /**
+     * The number of voxels of the chunk - not counting the padding - which hold the given palette entry.
+     *
+     * @param p
+     * @return
+     */
+    int count(final int p) { return counts[p]; }
+
+    /**
+     * The number of bits each voxel takes up in the chunk.
+     */
+    public int getBitsPerVoxel() { return bits; }
+
+    /**
+     * This function stores the key of a voxel - which may be in the padding - and updates the counts
+     * of the chunk and of the layers it's in.
+     */
+    private void store(final int x, final int y, final int z, final int key) {
+
+        final int index = index(x, y, z);
+        final int previous = paletteIndex(index);
+
+        /*
+         * Rewriting a voxel with the key it already holds changes nothing.
+         */
+        if (palette[previous] == key) {
+            return;
+        }
+
+        final int p = setKey(index, key);
+
+        final boolean insideX = x >= 0 && x < sizes[0];
+        final boolean insideY = y >= 0 && y < sizes[1];
+        final boolean insideZ = z >= 0 && z < sizes[2];
+
+        if (insideX && insideY && insideZ) {
+
+            counts[previous]--;
+            counts[p]++;
+
+            uniform = counts[p] == volume ? p : -1;
+        }
+
+        /*
+         * A voxel of the padding is only in the layer of padding itself - it's outside the
+         * layers along the other two axes.
+         */
+        if (insideY && insideZ) { countLayer(0, x, previous, p); }
+        if (insideX && insideZ) { countLayer(1, y, previous, p); }
+        if (insideX && insideY) { countLayer(2, z, previous, p); }
+
+        /*
+         * Changing the voxel can change its own faces, and the face of each neighbour which touches it.
+         */
+        exposeFaces(x,     y,     z);
+        exposeFaces(x - 1, y,     z);
+        exposeFaces(x + 1, y,     z);
+        exposeFaces(x,     y - 1, z);
+        exposeFaces(x,     y + 1, z);
+        exposeFaces(x,     y,     z - 1);
+        exposeFaces(x,     y,     z + 1);
+    }
+
+    /**
+     * This function works out the exposed faces of a voxel inside the chunk - the padding is ignored.
+     */
+    private void exposeFaces(final int x, final int y, final int z) {
+
+        if (x < 0 || x >= sizes[0] || y < 0 || y >= sizes[1] || z < 0 || z >= sizes[2]) {
+            return;
+        }
+
+        final int index = index(x, y, z);
+        final int p = paletteIndex(index);
+
+        int mask = 0;
+
+        if (p != 0 && !VoxelFace.isTransparent(palette[p])) {
+
+            for (int side = 0; side < 6; side++) {
+
+                if (paletteIndex(index + sideStrides[side]) != p) {
+                    mask |= 1 << side;
+                }
+            }
+        }
+
+        final int previous = faces[index];
+
+        exposed += Integer.bitCount(mask) - Integer.bitCount(previous);
+
+        for (int d = 0; d < 3; d++) {
+            axisExposed[d] += Integer.bitCount(mask & AXIS_SIDES[d]) - Integer.bitCount(previous & AXIS_SIDES[d]);
+        }
+
+        faces[index] = (byte) mask;
+    }
+
+    /**
+     * This function updates the counts of a layer when one of its voxels changes from palette index
+     * previous to p - which has already been stored.
+     */
+    private void countLayer(final int d, final int layer, final int previous, final int p) {
+
+        final int l = layer + 1;
+
+        if (previous == 0) {
+            layerSolid[d][l]++;
+        }
+
+        if (p == 0) {
+            layerSolid[d][l]--;
+        }
+
+        if (layerReference[d][l] == p) {
+
+            layerMatches[d][l]++;
+
+        } else if (layerReference[d][l] == previous && --layerMatches[d][l] == 0) {
+
+            layerReference[d][l] = p;
+            layerMatches[d][l] = countMatches(d, layer, p);
+        }
+    }
+
+    /**
+     * This function sweeps a layer, counting the voxels which hold palette index p.
+     */
+    private int countMatches(final int d, final int layer, final int p) {
+
+        final int u = (d + 1) % 3;
+        final int v = (d + 2) % 3;
+
+        final int[] x = new int[3];
+        x[d] = layer;
+
+        int matches = 0;
+
+        for (x[u] = 0; x[u] < sizes[u]; x[u]++) {
+
+            for (x[v] = 0; x[v] < sizes[v]; x[v]++) {
+
+                if (paletteIndex(index(x[0], x[1], x[2])) == p) {
+                    matches++;
+                }
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * This function stores a key at the given index in the array, adding it to the palette if it's new,
+     * and returns its palette index.
+     */
+    private int setKey(final int index, final int key) {
+
+        int p = find(key);
+
+        if (p < 0) {
+
+            if (paletteSize == palette.length) {
+                final int[] grown = new int[palette.length * 2];
+                System.arraycopy(palette, 0, grown, 0, paletteSize);
+                palette = grown;
+                counts = copyOf(counts, grown.length);
+
+                lookup = new int[grown.length * 2];
+
+                for (int entry = 0; entry < paletteSize; entry++) {
+                    insert(palette[entry], entry);
+                }
+            }
+
+            p = paletteSize++;
+            palette[p] = key;
+            insert(key, p);
+
+            if (bits < Integer.SIZE && paletteSize > 1 << bits) {
+                resize(bits * 2);
+            }
+        }
+
+        final int word = index >>> wordShift;
+        final int shift = (index & (indexesPerWord - 1)) * bits;
+
+        words[word] = (words[word] & ~(valueMask << shift)) | ((long) p << shift);
+
+        return p;
+    }
+
+    /**
+     * This function returns the palette index of a key, or -1 if it isn't in the palette.
+     */
+    private int find(final int key) {
+
+        final int mask = lookup.length - 1;
+
+        for (int slot = hash(key) & mask; lookup[slot] != 0; slot = (slot + 1) & mask) {
+
+            if (palette[lookup[slot] - 1] == key) {
+                return lookup[slot] - 1;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * This function adds a key to the lookup table, at the given palette index.
+     */
+    private void insert(final int key, final int p) {
+
+        final int mask = lookup.length - 1;
+
+        int slot = hash(key) & mask;
+
+        while (lookup[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        lookup[slot] = p + 1;
+    }
+
+    /**
+     * This function spreads the bits of a key, since keys differ mostly in their high bits - the type.
+     */
+    private static int hash(final int key) {
+
+        final int h = key * 0x9E3779B9;
+
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * This function repacks the palette indexes at the given width.
+     */
+    private void resize(final int newBits) {
+
+        final int count = faces.length;
+        final long[] old = words;
+        final int oldShift = wordShift;
+        final int oldPerWord = indexesPerWord;
+        final int oldBits = bits;
+        final long oldMask = valueMask;
+
+        bits = newBits;
+        indexesPerWord = Long.SIZE / bits;
+        wordShift = Integer.numberOfTrailingZeros(indexesPerWord);
+        valueMask = (1L << bits) - 1;
+        words = new long[(count + indexesPerWord - 1) / indexesPerWord];
+
+        if (old == null) {
+            return;
+        }
+
+        for (int index = 0; index < count; index++) {
+
+            final long p = (old[index >>> oldShift] >>> ((index & (oldPerWord - 1)) * oldBits)) & oldMask;
+
+            words[index >>> wordShift] |= p << ((index & (indexesPerWord - 1)) * bits);
+        }
+    }
+
+    private String describe() { return sizes[0] + "x" + sizes[1] + "x" + sizes[2]; }
+
+    private static int[] copyOf(final int[] array, final int length) {
+
+        final int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+}
@@ -0,0 +1,293 @@
+package mygame;
+
+/**
+ * This class holds a tall column of voxels - such as 16x256x16 - split into vertical sections,
+ * each a chunk of its own with a mesh of its own, so that an edit only remeshes the section it's in.
+ *
+ * A column meshed as a single chunk has to be remeshed from top to bottom on every edit, even
+ * though an edit can only change the faces next to it.  Here the column is cut into sections of
+ * sectionHeight voxels - 16 by default, so a 16x256x16 column is 16 sections of 16x16x16 - and
+ * editing a voxel only marks its own section dirty, along with the section next to it if the voxel
+ * lies on the border between them.  The padding above and below each section holds the border of
+ * the section next to it, kept up to date on every edit, so the faces between two sections are
+ * culled just as they would be within one chunk.
+ *
+ * Each section has its own buffer, which update fills with the mesh of the section.  A section
+ * with no voxels - the sky, in most columns - has no faces, so it isn't meshed at all and keeps
+ * no buffer.  The quads of a section are positioned within the section, so the mesh of section
+ * s belongs at height getSectionY(s) in the column.
+ *
+ * The column's voxel data should only be changed through set, or fill.  This class isn't thread
+ * safe - each instance should be confined to a single thread, as with IncrementalChunkMesh.
+ *
+ * @author Rob O'Leary
+ */
+public class ChunkColumn {
+
+    public static final int DEFAULT_SECTION_HEIGHT = 16;
+
+    private final Mesher mesher;
+    private final float voxelSize;
+
+    private final int height;
+    private final int sectionHeight;
+
+    /*
+     * These are the sections from the bottom of the column up, and the mesh and the dirty flag
+     * of each - the mesh is null where the section is empty.
+     */
+    private final Chunk[] sections;
+    private final MeshBuffer[] meshes;
+    private final boolean[] dirty;
+
+    /**
+     * Creates an empty column cut into sections of the default height.
+     *
+     * @param mesher
+     * @param width
+     * @param height
+     * @param depth
+     * @param voxelSize
+     */
+    public ChunkColumn(final Mesher mesher, final int width, final int height, final int depth, final float voxelSize) {
+
+        this(mesher, width, height, depth, DEFAULT_SECTION_HEIGHT, voxelSize);
+    }
+
+    /**
+     * Creates an empty column of the given width, height and depth, cut into sections of the
+     * given height - which must divide the height of the column.
+     *
+     * @param mesher
+     * @param width
+     * @param height
+     * @param depth
+     * @param sectionHeight
+     * @param voxelSize
+     */
+    public ChunkColumn(final Mesher mesher,
+                       final int width,
+                       final int height,
+                       final int depth,
+                       final int sectionHeight,
+                       final float voxelSize) {
+
+        if (sectionHeight < 1 || height < sectionHeight || height % sectionHeight != 0) {
+            throw new IllegalArgumentException("Sections of height " + sectionHeight + " don't divide a column of height " + height);
+        }
+
+        this.mesher = mesher;
+        this.voxelSize = voxelSize;
+        this.height = height;
+        this.sectionHeight = sectionHeight;
+
+        this.sections = new Chunk[height / sectionHeight];
+        this.meshes = new MeshBuffer[sections.length];
+        this.dirty = new boolean[sections.length];
+
+        for (int s = 0; s < sections.length; s++) {
+            sections[s] = new Chunk(width, sectionHeight, depth);
+        }
+    }
+
+    public int getWidth() { return sections[0].getWidth(); }
+
+    public int getHeight() { return height; }
+
+    public int getDepth() { return sections[0].getDepth(); }
+
+    public int getSectionHeight() { return sectionHeight; }
+
+    public int getSectionCount() { return sections.length; }
+
+    /**
+     * The height in the column, in voxels, of the bottom of the given section.
+     *
+     * @param section
+     * @return
+     */
+    public int getSectionY(final int section) { return section * sectionHeight; }
+
+    /**
+     * The voxel data of a section - which should only be read, since edits made to it directly
+     * aren't tracked.
+     *
+     * @param section
+     * @return
+     */
+    public Chunk getSection(final int section) { return sections[section]; }
+
+    /**
+     * The mesh of a section as of the last update - or null if the section is empty, or hasn't
+     * been meshed yet.  The buffer is reused when the section is next remeshed.
+     *
+     * @param section
+     * @return
+     */
+    public MeshBuffer getMesh(final int section) { return meshes[section]; }
+
+    /**
+     * Whether a section has edits which haven't been meshed yet.
+     *
+     * @param section
+     * @return
+     */
+    public boolean isDirty(final int section) { return dirty[section]; }
+
+    /**
+     * This function returns the key of a voxel - the height runs from 0 to the height of the column.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public int get(final int x, final int y, final int z) {
+
+        check(x, y, z);
+
+        return sections[y / sectionHeight].get(x, y % sectionHeight, z);
+    }
+
+    /**
+     * This function changes a single voxel, marking its section dirty - and if the voxel is on the
+     * border of its section, copying it into the padding of the section next to it, which is then
+     * dirty too.  Setting a voxel to the key it already has changes nothing.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param face
+     */
+    public void set(final int x, final int y, final int z, final VoxelFace face) {
+
+        check(x, y, z);
+
+        final int s = y / sectionHeight;
+        final int local = y % sectionHeight;
+
+        if (sections[s].get(x, local, z) == (face == null ? 0 : face.pack(0))) {
+            return;
+        }
+
+        sections[s].set(x, local, z, face);
+        dirty[s] = true;
+
+        if (local == 0 && s > 0) {
+            sections[s - 1].set(x, sectionHeight, z, face);
+            dirty[s - 1] = true;
+        }
+
+        if (local == sectionHeight - 1 && s < sections.length - 1) {
+            sections[s + 1].set(x, -1, z, face);
+            dirty[s + 1] = true;
+        }
+    }
+
+    /**
+     * This function checks that a voxel lies inside the column - unlike a chunk, its padding can't be
+     * set directly, since it's copied from the columns next to it (see setNeighbour).
+     *
+     * @param x
+     * @param y
+     * @param z
+     */
+    private void check(final int x, final int y, final int z) {
+
+        if (x < 0 || x >= getWidth() || y < 0 || y >= height || z < 0 || z >= getDepth()) {
+            throw new IllegalArgumentException("Voxel " + x + "," + y + "," + z + " is outside a column of "
+                                               + getWidth() + "x" + height + "x" + getDepth());
+        }
+    }
+
+    /**
+     * This function copies the border of the column on the given side of this one into the
+     * padding of the sections - or clears it if there's none - marking the sections on that side
+     * dirty.  Beside the column, the neighbour must be the same size and cut into the same sections;
+     * above or below it, only its width and depth must match.  See Chunk.setNeighbour - this needs
+     * calling again whenever the border of the neighbour changes.
+     *
+     * @param side
+     * @param neighbour
+     */
+    public void setNeighbour(final int side, final ChunkColumn neighbour) {
+
+        if (side == VoxelFace.TOP) {
+            setNeighbour(sections.length - 1, side, neighbour == null ? null : neighbour.sections[0]);
+            return;
+        }
+
+        if (side == VoxelFace.BOTTOM) {
+            setNeighbour(0, side, neighbour == null ? null : neighbour.sections[neighbour.sections.length - 1]);
+            return;
+        }
+
+        if (neighbour != null && (neighbour.height != height || neighbour.sectionHeight != sectionHeight)) {
+            throw new IllegalArgumentException("Neighbour of height " + neighbour.height + " in sections of " + neighbour.sectionHeight
+                                               + " for column of height " + height + " in sections of " + sectionHeight);
+        }
+
+        for (int s = 0; s < sections.length; s++) {
+            setNeighbour(s, side, neighbour == null ? null : neighbour.sections[s]);
+        }
+    }
+
+    private void setNeighbour(final int s, final int side, final Chunk neighbour) {
+
+        sections[s].setNeighbour(side, neighbour);
+        dirty[s] = true;
+    }
+
+    /**
+     * This function fills the column with terrain from the generator - the column at the given
+     * coordinates starts at world position chunkX * width, chunkY * height, chunkZ * depth - and
+     * marks every section dirty.  The padding between the sections is filled from the terrain too.
+     *
+     * @param generator
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     */
+    public void fill(final TerrainGenerator generator, final int chunkX, final int chunkY, final int chunkZ) {
+
+        for (int s = 0; s < sections.length; s++) {
+
+            generator.fill(sections[s], chunkX, chunkY * sections.length + s, chunkZ);
+            dirty[s] = true;
+        }
+    }
+
+    /**
+     * This function remeshes the dirty sections, returning how many it remeshed.  A section which
+     * has become empty gives up its mesh, and an empty section is never meshed at all.
+     *
+     * @return
+     */
+    public int update() {
+
+        int remeshed = 0;
+
+        for (int s = 0; s < sections.length; s++) {
+
+            if (!dirty[s]) {
+                continue;
+            }
+
+            dirty[s] = false;
+
+            if (sections[s].isEmpty()) {
+                meshes[s] = null;
+                continue;
+            }
+
+            if (meshes[s] == null) {
+                meshes[s] = new MeshBuffer(voxelSize, ChunkMesher.maskSize(sections[s]));
+            }
+
+            mesher.mesh(sections[s], meshes[s]);
+            remeshed++;
+        }
+
+        return remeshed;
+    }
+}
@@ -0,0 +1,59 @@
+package mygame;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * This is the Java Flight Recorder event for a single chunk meshing job - its duration is the
+ * time taken to mesh the chunk.  It needs a JVM with JFR, so it's never touched directly - see
+ * MeshEvents, which only creates it where JFR is available.
+ *
+ * @author Rob O'Leary
+ */
+@Name("mygame.ChunkMesh")
+@Label("Chunk Mesh")
+@Category({ "Voxel", "Meshing" })
+@Description("The greedy meshing of a single chunk")
+@StackTrace(false)
+class ChunkMeshEvent extends Event {
+
+    @Label("Chunk X")
+    int chunkX;
+
+    @Label("Chunk Y")
+    int chunkY;
+
+    @Label("Chunk Z")
+    int chunkZ;
+
+    @Label("Chunk Width")
+    int width;
+
+    @Label("Chunk Height")
+    int height;
+
+    @Label("Chunk Depth")
+    int depth;
+
+    @Label("Quads")
+    int quads;
+
+    @Label("Vertices")
+    int vertices;
+
+    @Label("Directions")
+    @Description("The number of face directions in which the mesher swept any slices")
+    int directions;
+
+    @Label("Slices")
+    @Description("The number of slices the mesher swept, not counting those it skipped")
+    int slices;
+
+    @Label("Mesher")
+    @Description("The name of the meshing algorithm")
+    String mesher;
+}
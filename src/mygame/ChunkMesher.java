@@ -0,0 +1,997 @@
+package mygame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This is the greedy mesher itself - it takes the voxel data of a chunk and writes the
+ * merged quads into a MeshBuffer.  There are two engines - greedy(), which is the port of
+ * Mikola Lysenko's javascript implementation, and binaryGreedy(), which produces the same
+ * quads working on bitmasks.
+ *
+ * The mesher keeps no state of its own besides its configuration - every working variable is
+ * local to the call, apart from the mask and the other scratch buffers, which are taken from a
+ * pool kept per thread (see MeshScratch), and the voxel data is only ever read.  So a single
+ * instance can mesh any number of chunks concurrently, and of any size, as long as each thread
+ * writes into its own MeshBuffer.
+ *
+ * @author Rob O'Leary
+ */
+public class ChunkMesher implements Mesher {
+
+    /*
+     * This is the number of ints each quad takes up in the scratch list of quads - the position
+     * of its corner, its width and height, and its palette index.
+     */
+    static final int QUAD_INTS = 3;
+
+    /**
+     * These are the ways in which the greedy meshing of a single chunk can be spread over
+     * several threads.
+     */
+    public enum Parallelism {
+
+        /**
+         * The chunk is meshed on the calling thread only.
+         */
+        NONE,
+
+        /**
+         * The 6 face directions are meshed as parallel fork/join tasks.
+         */
+        DIRECTIONS,
+
+        /**
+         * The slices of each of the 6 face directions are split into as many ranges as the pool
+         * has threads, and each range is meshed as a parallel fork/join task.
+         */
+        SLICES
+    }
+
+    private final Parallelism parallelism;
+    private final ForkJoinPool pool;
+    private final MeshingMetrics metrics;
+
+    /**
+     * Creates a mesher which meshes each chunk on the calling thread.
+     */
+    public ChunkMesher() {
+
+        this(Parallelism.NONE, null);
+    }
+
+    /**
+     * Creates a mesher which spreads the greedy meshing of each chunk over the threads of the
+     * pool.  This cuts the time taken to mesh a single large chunk - but when many chunks are
+     * meshed at once, meshing each on a single thread keeps all cores just as busy at less cost.
+     *
+     * @param parallelism
+     * @param pool
+     */
+    public ChunkMesher(final Parallelism parallelism, final ForkJoinPool pool) {
+
+        this(parallelism, pool, null);
+    }
+
+    /**
+     * Creates a mesher which records the cost of meshing every chunk in the given metrics - or
+     * none if they're null.  Timing the phases of each slice costs a little, so leave the metrics
+     * out where they aren't wanted.
+     *
+     * @param parallelism
+     * @param pool
+     * @param metrics
+     */
+    public ChunkMesher(final Parallelism parallelism, final ForkJoinPool pool, final MeshingMetrics metrics) {
+
+        if (parallelism != Parallelism.NONE && pool == null) {
+            throw new IllegalArgumentException("A pool is required for " + parallelism + " parallelism");
+        }
+
+        this.parallelism = parallelism;
+        this.pool = pool;
+        this.metrics = metrics;
+    }
+
+    /**
+     * The metrics the mesher records into, or null if there are none.
+     *
+     * @return
+     */
+    public MeshingMetrics getMetrics() { return metrics; }
+
+    public String getName() { return "greedy"; }
+
+    /**
+     * This function meshes the chunk with greedy().
+     *
+     * @param chunk
+     * @param buffer
+     * @return
+     */
+    public MeshBuffer mesh(final Chunk chunk, final MeshBuffer buffer) {
+
+        return greedy(chunk, buffer);
+    }
+
+    /**
+     * This is the bitwise engine as a Mesher of its own - it shares the configuration and
+     * metrics of this mesher.
+     *
+     * @return
+     */
+    public Mesher binary() {
+
+        return new Mesher() {
+
+            public MeshBuffer mesh(final Chunk chunk, final MeshBuffer buffer) {
+
+                return binaryGreedy(chunk, buffer);
+            }
+
+            public String getName() { return "binary"; }
+        };
+    }
+
+    /**
+     * This function runs the greedy meshing over a chunk, returning the quads in a new buffer.
+     *
+     * @param chunk
+     * @param voxelSize
+     * @return
+     */
+    public MeshBuffer greedy(final Chunk chunk, final float voxelSize) {
+
+        return greedy(chunk, new MeshBuffer(voxelSize, maskSize(chunk)));
+    }
+
+    /**
+     * This function runs the greedy meshing over a chunk, writing the merged quads into the
+     * given buffer - which is cleared first - and returning it.
+     *
+     * A face on the border of the chunk is culled if it's equal to the face of the neighbouring
+     * chunk it touches, just as within the chunk - the neighbouring faces are those copied into
+     * the padding of the chunk (see Chunk.setNeighbour).  Where there is no neighbour the border
+     * faces are always kept.
+     *
+     * @param chunk
+     * @param buffer
+     * @return
+     */
+    public MeshBuffer greedy(final Chunk chunk, final MeshBuffer buffer) {
+
+        if (metrics == null) {
+            return greedy(chunk, buffer, null);
+        }
+
+        final long allocated = MeshingMetrics.allocatedBytes();
+        final long start = System.nanoTime();
+
+        final long[] timings = new long[MeshingMetrics.PHASES];
+
+        greedy(chunk, buffer, timings);
+
+        metrics.record(start, allocated, timings, buffer);
+
+        return buffer;
+    }
+
+    /**
+     * This function is the greedy meshing of a chunk, adding the time spent in each phase to the
+     * timings if they're not null.
+     */
+    private MeshBuffer greedy(final Chunk chunk, final MeshBuffer buffer, final long[] timings) {
+
+        buffer.clear();
+
+        /*
+         * An empty chunk has no faces at all - those of the voxels around it belong to the neighbours.
+         */
+        if (chunk.isEmpty()) {
+            return buffer;
+        }
+
+        if (parallelism != Parallelism.NONE) {
+            return greedyParallel(chunk, buffer, timings);
+        }
+
+        /*
+         * We create a mask - this will contain the groups of matching voxel faces
+         * as we proceed through the chunk in 6 directions - once for each face.
+         *
+         * The mask holds the palette indexes of the faces (see Chunk) - an
+         * index of 0 marks a cell without a face.  The quads merged from the mask
+         * are collected in a scratch list before they're emitted.  Since the chunk
+         * needn't be a cube, the mask is big enough for the largest slice along any axis.
+         *
+         * Both are taken from the pool of the thread rather than allocated for each chunk.
+         */
+        final MeshScratch scratch = MeshScratch.get(chunk);
+
+        final int[] mask = scratch.mask;
+        final int[] quads = scratch.quads;
+
+        /**
+         * We start with the lesser-spotted boolean for-loop (also known as the old flippy floppy).
+         *
+         * The variable backFace will be TRUE on the first iteration and FALSE on the second - this allows
+         * us to track which direction the indices should run during creation of the quad.
+         *
+         * This loop runs twice, and the inner loop 3 times - totally 6 iterations - one for each
+         * voxel face.
+         */
+        for (boolean backFace = true, b = false; b != backFace; backFace = backFace && b, b = !b) {
+
+            /*
+             * We sweep over the 3 dimensions - most of what follows is well described by Mikola Lysenko
+             * in his post - and is ported from his Javascript implementation.  Where this implementation
+             * diverges, I've added commentary.
+             */
+            for(int d = 0; d < 3; d++) {
+
+                greedy(chunk, backFace, d, -1, chunk.getSize(d), mask, quads, buffer, timings);
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * This function runs the greedy meshing as fork/join tasks on the pool - either one task per
+     * direction, or one per range of slices of each direction.  The slices only read the voxel data,
+     * so the tasks are independent - each has its own mask and buffer, and the buffers are appended
+     * to the chunk's buffer in the same order as the serial sweep once all tasks are done.  So the
+     * result is the same whichever way the work is split.
+     *
+     * The buffers of the tasks are taken from the pool of the calling thread, which waits for the
+     * tasks to finish - so they're reused from one chunk to the next, and only ever grow to the
+     * quads of their own range, rather than each being sized for a whole slice.
+     */
+    private MeshBuffer greedyParallel(final Chunk chunk, final MeshBuffer buffer, final long[] timings) {
+
+        final MeshScratch scratch = MeshScratch.get(chunk);
+        final List<SliceTask> tasks = new ArrayList<SliceTask>();
+
+        for (boolean backFace = true, b = false; b != backFace; backFace = backFace && b, b = !b) {
+
+            for(int d = 0; d < 3; d++) {
+
+                /*
+                 * There are size + 1 slices in each direction - from the one in front of the
+                 * chunk to the one behind it.
+                 */
+                final int slices = chunk.getSize(d) + 1;
+                final int ranges = parallelism == Parallelism.SLICES ? Math.min(slices, pool.getParallelism()) : 1;
+
+                for (int r = 0; r < ranges; r++) {
+
+                    tasks.add(new SliceTask(chunk,
+                                            backFace,
+                                            d,
+                                            -1 + slices * r / ranges,
+                                            -1 + slices * (r + 1) / ranges,
+                                            scratch.buffer(tasks.size(), buffer.getVoxelSize()),
+                                            timings != null));
+                }
+            }
+        }
+
+        pool.invoke(new RecursiveAction() {
+
+            @Override
+            protected void compute() {
+
+                invokeAll(tasks);
+            }
+        });
+
+        for (SliceTask task : tasks) {
+
+            buffer.append(task.buffer);
+
+            if (timings != null) {
+
+                for (int phase = 0; phase < MeshingMetrics.PHASES; phase++) {
+                    timings[phase] += task.timings[phase];
+                }
+            }
+        }
+
+        return buffer;
+    }
+
+    /**
+     * This is the greedy meshing of a range of slices in one direction, run as a fork/join task.
+     */
+    private class SliceTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Chunk chunk;
+        private final boolean backFace;
+        private final int d;
+        private final int from;
+        private final int to;
+        private final MeshBuffer buffer;
+        private final long[] timings;
+
+        SliceTask(final Chunk chunk,
+                  final boolean backFace,
+                  final int d,
+                  final int from,
+                  final int to,
+                  final MeshBuffer buffer,
+                  final boolean timed) {
+
+            this.chunk = chunk;
+            this.backFace = backFace;
+            this.d = d;
+            this.from = from;
+            this.to = to;
+            this.buffer = buffer;
+            this.timings = timed ? new long[MeshingMetrics.PHASES] : null;
+        }
+
+        @Override
+        protected void compute() {
+
+            final MeshScratch scratch = MeshScratch.get(chunk.getArea(d));
+
+            buffer.clear();
+
+            greedy(chunk, backFace, d, from, to, scratch.mask, scratch.quads, buffer, timings);
+        }
+    }
+
+    /**
+     * This function runs the greedy meshing of a single direction - the dimension d, facing
+     * backwards or forwards - appending the quads to the buffer.  Only the slices from - inclusive -
+     * to - exclusive - are meshed, where slice -1 lies in front of the chunk and slice
+     * chunk.getSize(d) - 1 behind it.  The quads of a slice only depend on the two layers of voxels either side of it,
+     * which is what IncrementalChunkMesh relies on to remesh single slices.
+     *
+     * The mask must hold chunk.getArea(d) cells, and the quads QUAD_INTS times as many.  If the timings
+     * aren't null, the time spent in each phase is added to them - see MeshingMetrics.
+     *
+     * @param chunk
+     * @param backFace
+     * @param d
+     * @param from
+     * @param to
+     * @param mask
+     * @param quads
+     * @param buffer
+     * @param timings
+     */
+    void greedy(final Chunk chunk,
+                final boolean backFace,
+                final int d,
+                final int from,
+                final int to,
+                final int[] mask,
+                final int[] quads,
+                final MeshBuffer buffer,
+                final long[] timings) {
+
+        /*
+         * These are just working variables for the algorithm - almost all taken
+         * directly from Mikola Lysenko's javascript implementation.
+         */
+        int i, j, k, l, w, h, u, v, n, side = 0;
+
+        final int[] x = new int []{0,0,0};
+        final int[] du = new int[]{0,0,0};
+        final int[] dv = new int[]{0,0,0};
+
+        /*
+         * These are the length of the scratch list of quads, and the time the current phase
+         * started, when it's being timed.
+         */
+        int q;
+        long time;
+
+        /*
+         * This is just a working variable to hold the index of the voxel whose face is being looked at.
+         */
+        int voxel;
+
+        u = (d + 1) % 3;
+        v = (d + 2) % 3;
+
+        /*
+         * These are the bounds of the chunk along each axis - the mask is sizeU cells wide and
+         * sizeV cells high.
+         */
+        final int size = chunk.getSize(d);
+        final int sizeU = chunk.getSize(u);
+        final int sizeV = chunk.getSize(v);
+
+        /*
+         * The voxels are read straight from the padded array of the chunk - the voxel behind
+         * another is always one stride along d away, so no bounds checks are needed.  The keys
+         * of the faces are only looked up in the palette once a quad is emitted.
+         *
+         * Whether a face is exposed is read from the face masks of the chunk, which already hold
+         * the comparison of each voxel with its neighbours - so only the voxel owning the face is
+         * read, which for back faces is the one behind the slice.
+         */
+        final int[] palette = chunk.palette();
+        final byte[] faces = chunk.faces();
+
+        final int strideD = chunk.stride(d);
+        final int strideU = chunk.stride(u);
+        final int strideV = chunk.stride(v);
+
+        /*
+         * Here we're keeping track of the side that we're meshing.
+         */
+        if (d == 0)      { side = backFace ? VoxelFace.WEST   : VoxelFace.EAST;  }
+        else if (d == 1) { side = backFace ? VoxelFace.BOTTOM : VoxelFace.TOP;   }
+        else if (d == 2) { side = backFace ? VoxelFace.SOUTH  : VoxelFace.NORTH; }
+
+        final int sideBit = 1 << side;
+        final int owner = backFace ? strideD : 0;
+
+        /*
+         * If every voxel in the chunk is the same, no faces are exposed inside it - the only
+         * faces are on the border of the chunk facing out, which lie in the slice in front of
+         * the chunk for back faces and the one behind it for front faces.  So the sweep is cut
+         * down to that slice, and skipped altogether for an empty chunk.
+         */
+        int first = from;
+        int last = to;
+
+        if (chunk.isUniform()) {
+
+            if (chunk.isEmpty()) {
+                return;
+            }
+
+            final int border = backFace ? -1 : size - 1;
+
+            first = Math.max(from, border);
+            last  = Math.min(to, border + 1);
+        }
+
+        /*
+         * We move through the dimension from front to back
+         */
+        for(x[d] = first; x[d] < last;) {
+
+            /*
+             * The back faces in the slice behind the chunk, and the front faces in the slice in
+             * front of it, belong to the neighbouring chunks - those are meshed with the neighbour,
+             * so there's nothing to do here.
+             */
+            if (backFace ? x[d] == size - 1 : x[d] == -1) {
+                x[d]++;
+                continue;
+            }
+
+            /*
+             * The slice lies between the layers x[d] and x[d] + 1.  If both layers are all the same
+             * key, every face in the slice is culled - and if the layer that the faces would belong
+             * to is empty, there are no faces to mesh either.  Either way the slice can be skipped
+             * without building its mask.
+             */
+            final int layer  = chunk.getUniformLayer(d, x[d]);
+            final int layer1 = chunk.getUniformLayer(d, x[d] + 1);
+
+            if ((layer >= 0 && layer == layer1) || (backFace ? layer1 : layer) == 0) {
+                x[d]++;
+                continue;
+            }
+
+            buffer.swept(side, 1);
+
+            /*
+             * -------------------------------------------------------------------
+             *   We compute the mask
+             * -------------------------------------------------------------------
+             */
+            time = timings == null ? 0 : System.nanoTime();
+
+            n = 0;
+
+            x[u] = 0;
+            x[v] = 0;
+
+            final int slice = chunk.index(x[0], x[1], x[2]);
+
+            for(j = 0; j < sizeV; j++) {
+
+                for(i = 0, k = slice + j * strideV; i < sizeU; i++, k += strideU) {
+
+                    /*
+                     * Here we retrieve the voxel which owns the face - depending on whether we're
+                     * moving through on a backface or not.
+                     */
+                    voxel = k + owner;
+
+                    /*
+                     * Note that the mask holds the palette index of the face - each stands for a packed
+                     * key, which lets the faces be merged based on any number of attributes in a single
+                     * primitive compare.
+                     */
+                    mask[n++] = (faces[voxel] & sideBit) != 0 ? chunk.paletteIndex(voxel) : 0;
+                }
+            }
+
+            x[d]++;
+
+            if (timings != null) {
+                time = lap(timings, MeshingMetrics.MASK, time);
+            }
+
+            /*
+             * Now we generate the mesh for the mask
+             */
+            n = 0;
+            q = 0;
+
+            for(j = 0; j < sizeV; j++) {
+
+                for(i = 0; i < sizeU;) {
+
+                    if(mask[n] != 0) {
+
+                        /*
+                         * We compute the width
+                         */
+                        for(w = 1; i + w < sizeU && mask[n + w] == mask[n]; w++) {}
+
+                        /*
+                         * Then we compute height
+                         */
+                        boolean done = false;
+
+                        for(h = 1; j + h < sizeV; h++) {
+
+                            for(k = 0; k < w; k++) {
+
+                                if(mask[n + k + h * sizeU] != mask[n]) { done = true; break; }
+                            }
+
+                            if(done) { break; }
+                        }
+
+                        /*
+                         * Transparent faces are never marked as exposed in the chunk, so they never reach
+                         * the mask - there's no need to check for culled faces here.
+                         *
+                         * Add quad - to the scratch list, from which it's emitted once the whole mask is merged.
+                         */
+                        quads[q++] = i | (j << 16);
+                        quads[q++] = w | (h << 16);
+                        quads[q++] = mask[n];
+
+                        /*
+                         * We zero out the mask
+                         */
+                        for(l = 0; l < h; ++l) {
+
+                            for(k = 0; k < w; ++k) { mask[n + k + l * sizeU] = 0; }
+                        }
+
+                        /*
+                         * And then finally increment the counters and continue
+                         */
+                        i += w;
+                        n += w;
+
+                    } else {
+
+                      i++;
+                      n++;
+                    }
+                }
+            }
+
+            if (timings != null) {
+                time = lap(timings, MeshingMetrics.MERGE, time);
+            }
+
+            /*
+             * And finally we emit the quads of the slice into the buffer of the chunk.
+             */
+            for (int quad = 0; quad < q; quad += QUAD_INTS) {
+
+                x[u] = quads[quad] & 0xFFFF;
+                x[v] = quads[quad] >>> 16;
+
+                du[0] = 0;
+                du[1] = 0;
+                du[2] = 0;
+                du[u] = quads[quad + 1] & 0xFFFF;
+
+                dv[0] = 0;
+                dv[1] = 0;
+                dv[2] = 0;
+                dv[v] = quads[quad + 1] >>> 16;
+
+                /*
+                 * We pass the packed key of the face to the function, containing all the attributes
+                 * of the face - which allows for variables to be passed to shaders - for example
+                 * lighting values used to create ambient occlusion.
+                 */
+                buffer.quad(x, du, dv, VoxelFace.withSide(palette[quads[quad + 2]], side), backFace);
+            }
+
+            if (timings != null) {
+                time = lap(timings, MeshingMetrics.EMIT, time);
+            }
+        }
+    }
+
+    /**
+     * This function adds the time since the given time to a phase, and returns the time now.
+     */
+    private static long lap(final long[] timings, final int phase, final long time) {
+
+        final long now = System.nanoTime();
+
+        timings[phase] += now - time;
+
+        return now;
+    }
+
+    /**
+     * This is a second meshing engine, which produces the same quads as greedy() but works
+     * on whole columns and rows of voxels at once rather than cell by cell.
+     *
+     * The voxels of each distinct face key are stored as long bitmasks - one long per column of
+     * voxels along each axis, where bit l is set if the voxel at l along the column has that key.
+     * The columns of all 3 axes are built in a single pass over the chunk.  Because a face is only
+     * culled against an equal face, the back faces of a key which are exposed along a column are
+     * just the column ANDed with the inverse of itself shifted up by one - and the front faces the
+     * same, shifted down - with the padding of the chunk standing in for the voxels beyond either
+     * end.  So the faces on the border are culled against the neighbouring chunks just as in greedy().
+     *
+     * Only the bits of the exposed faces are then moved into planes - one long per row of each layer,
+     * where bit u is set if the face at that position is exposed - so the work from there on follows
+     * the number of faces rather than voxels.  The greedy merge runs on the planes - the width of a
+     * quad is found with Long.numberOfTrailingZeros, and the height by ANDing the following rows
+     * against the run.
+     *
+     * Since a column is a single long, this only works for chunks up to 64 voxels along every axis.
+     *
+     * @param chunk
+     * @param buffer
+     * @return
+     */
+    public MeshBuffer binaryGreedy(final Chunk chunk, final MeshBuffer buffer) {
+
+        if (!fitsBinary(chunk)) {
+            throw new IllegalArgumentException("Binary meshing supports chunks up to " + Long.SIZE + " voxels along every axis");
+        }
+
+        if (metrics == null) {
+            return binary(chunk, buffer);
+        }
+
+        final long allocated = MeshingMetrics.allocatedBytes();
+        final long start = System.nanoTime();
+
+        binary(chunk, buffer);
+
+        metrics.record(start, allocated, null, buffer);
+
+        return buffer;
+    }
+
+    /**
+     * Whether a chunk is small enough for binaryGreedy() - no more than 64 voxels along any axis.
+     *
+     * @param chunk
+     * @return
+     */
+    public static boolean fitsBinary(final Chunk chunk) {
+
+        return chunk.getWidth() <= Long.SIZE && chunk.getHeight() <= Long.SIZE && chunk.getDepth() <= Long.SIZE;
+    }
+
+    /**
+     * The number of cells a mask must hold to mesh any slice of the chunk - the largest layer
+     * along any axis.
+     */
+    static int maskSize(final Chunk chunk) {
+
+        return Math.max(chunk.getArea(0), Math.max(chunk.getArea(1), chunk.getArea(2)));
+    }
+
+    private MeshBuffer binary(final Chunk chunk, final MeshBuffer buffer) {
+
+        int i, j, h, u, v, w, p, side = 0;
+
+        final int[] x = new int []{0,0,0};
+        final int[] du = new int[]{0,0,0};
+        final int[] dv = new int[]{0,0,0};
+
+        buffer.clear();
+
+        /*
+         * A uniform chunk only has faces on its border, so there's nothing to gain from building the
+         * bitmasks - greedy() meshes just the border slices, and nothing at all for an empty chunk.
+         */
+        if (chunk.isUniform()) {
+
+            if (!chunk.isEmpty()) {
+
+                final MeshScratch scratch = MeshScratch.get(chunk);
+
+                for (boolean backFace = true, b = false; b != backFace; backFace = backFace && b, b = !b) {
+
+                    for (int d = 0; d < 3; d++) {
+
+                        greedy(chunk, backFace, d, -1, chunk.getSize(d), scratch.mask, scratch.quads, buffer, null);
+                    }
+                }
+            }
+
+            return buffer;
+        }
+
+        final int[] palette = chunk.palette();
+        final int paletteSize = chunk.getPaletteSize();
+        final MeshScratch scratch = MeshScratch.get(chunk);
+
+        /*
+         * The bitmasks are only kept for the keys which have faces - keys which are in the chunk,
+         * and aren't empty or transparent.  Each is given a slot, and keys[slot] is its palette index.
+         * The faces of a key are only ever culled against the same key, so the other keys in the
+         * padding can be treated as empty.
+         */
+        final int[] slots = scratch.slots(paletteSize);
+        final int[] keys = scratch.keys(paletteSize);
+
+        int slotCount = 0;
+
+        for (p = 0; p < paletteSize; p++) {
+
+            final boolean meshed = palette[p] != 0 && !VoxelFace.isTransparent(palette[p]) && chunk.count(p) > 0;
+
+            slots[p] = meshed ? slotCount : -1;
+
+            if (meshed) {
+                keys[slotCount++] = p;
+            }
+        }
+
+        /*
+         * These are the offsets into the masks of the columns along each axis - the column of slot s
+         * at (u, v) along axis d is at columns[offsets[d] + (s * sizeV + v) * sizeU + u], with bit
+         * l set where the voxel at l along d holds the key.  After them come the padding masks on
+         * each end of each axis - one long per row of the padding, with bit u set where the padding
+         * holds the key - at ends[d] and ends[d] + slotCount * sizeV.
+         */
+        final int[] sizes = new int[]{ chunk.getWidth(), chunk.getHeight(), chunk.getDepth() };
+        final int[] offsets = new int[3];
+        final int[] ends = new int[3];
+
+        int length = 0;
+        int planeLength = 0;
+
+        for (int d = 0; d < 3; d++) {
+
+            offsets[d] = length;
+            length += slotCount * chunk.getArea(d);
+        }
+
+        for (int d = 0; d < 3; d++) {
+
+            ends[d] = length;
+            length += 2 * slotCount * sizes[(d + 2) % 3];
+            planeLength = Math.max(planeLength, 2 * slotCount * sizes[d] * sizes[(d + 2) % 3]);
+        }
+
+        final long[] columns = scratch.rows(length);
+
+        /*
+         * Here we build the columns of all 3 axes in a single pass over the voxels - the padding
+         * is left out, so that a whole column fits in a long.
+         */
+        final int offsetX = offsets[0];
+        final int offsetY = offsets[1];
+        final int offsetZ = offsets[2];
+
+        for (int z = 0; z < sizes[2]; z++) {
+
+            for (int y = 0; y < sizes[1]; y++) {
+
+                int index = chunk.index(0, y, z);
+
+                for (int xi = 0; xi < sizes[0]; xi++, index++) {
+
+                    final int slot = slots[chunk.paletteIndex(index)];
+
+                    if (slot < 0) {
+                        continue;
+                    }
+
+                    columns[offsetX + (slot * sizes[2] + z) * sizes[1] + y]  |= 1L << xi;
+                    columns[offsetY + (slot * sizes[0] + xi) * sizes[2] + z] |= 1L << y;
+                    columns[offsetZ + (slot * sizes[1] + y) * sizes[0] + xi] |= 1L << z;
+                }
+            }
+        }
+
+        /*
+         * And the padding on both ends of each axis, which the columns leave out.
+         */
+        for (int d = 0; d < 3; d++) {
+
+            u = (d + 1) % 3;
+            v = (d + 2) % 3;
+
+            for (int end = 0; end < 2; end++) {
+
+                x[d] = end == 0 ? -1 : sizes[d];
+
+                final int base = ends[d] + end * slotCount * sizes[v];
+
+                for (x[v] = 0; x[v] < sizes[v]; x[v]++) {
+
+                    for (x[u] = 0; x[u] < sizes[u]; x[u]++) {
+
+                        final int slot = slots[chunk.paletteIndex(chunk.index(x[0], x[1], x[2]))];
+
+                        if (slot >= 0) {
+                            columns[base + slot * sizes[v] + x[v]] |= 1L << x[u];
+                        }
+                    }
+                }
+            }
+        }
+
+        /*
+         * These are the planes the exposed faces are gathered into for merging - plane l of slot s,
+         * facing backwards or forwards, holds a row per v with bit u set where the face is exposed.
+         * The merge clears every bit it reads, so the planes are always left empty for the next axis,
+         * and the next chunk.  The layers which have any faces at all are marked in a long per plane set.
+         */
+        final long[] planes = scratch.planes(planeLength);
+        final long[] layers = scratch.layers(2 * slotCount);
+
+        for (int d = 0; d < 3; d++) {
+
+            u = (d + 1) % 3;
+            v = (d + 2) % 3;
+
+            final int size = sizes[d];
+            final int sizeU = sizes[u];
+            final int sizeV = sizes[v];
+
+            /*
+             * The faces of a column are culled with shifts - a voxel's back face is exposed where
+             * the voxel in front of it doesn't hold the same key, and its front face where the voxel
+             * behind it doesn't.  The padding stands in for the voxels beyond either end.  Then only the
+             * exposed bits are moved into the planes, so the cost follows the faces, not the voxels.
+             */
+            for (int slot = 0; slot < slotCount; slot++) {
+
+                final int lows = ends[d] + slot * sizeV;
+                final int highs = lows + slotCount * sizeV;
+
+                for (int row = 0; row < sizeV; row++) {
+
+                    final long low = columns[lows + row];
+                    final long high = columns[highs + row];
+                    final int column = offsets[d] + (slot * sizeV + row) * sizeU;
+
+                    for (int cell = 0; cell < sizeU; cell++) {
+
+                        final long bits = columns[column + cell];
+
+                        if (bits == 0) {
+                            continue;
+                        }
+
+                        long back  = bits & ~((bits << 1)  | (low  >>> cell & 1L));
+                        long front = bits & ~((bits >>> 1) | (high >>> cell & 1L) << (size - 1));
+
+                        final long cellBit = 1L << cell;
+
+                        layers[2 * slot]     |= back;
+                        layers[2 * slot + 1] |= front;
+
+                        while (back != 0) {
+                            planes[((2 * slot) * size + Long.numberOfTrailingZeros(back)) * sizeV + row] |= cellBit;
+                            back &= back - 1;
+                        }
+
+                        while (front != 0) {
+                            planes[((2 * slot + 1) * size + Long.numberOfTrailingZeros(front)) * sizeV + row] |= cellBit;
+                            front &= front - 1;
+                        }
+                    }
+                }
+            }
+
+            /*
+             * Then the planes are merged - the same row masks serve for both faces along the axis, the
+             * old flippy floppy again, as in greedy().  The layers merged in each direction, for any key,
+             * are the slices swept.
+             */
+            long sweptBack = 0, sweptFront = 0;
+
+            for (int slot = 0; slot < slotCount; slot++) {
+
+                final int key = palette[keys[slot]];
+
+                for (int facing = 0; facing < 2; facing++) {
+
+                    final boolean backFace = facing == 0;
+
+                    if (d == 0)      { side = backFace ? VoxelFace.WEST   : VoxelFace.EAST;  }
+                    else if (d == 1) { side = backFace ? VoxelFace.BOTTOM : VoxelFace.TOP;   }
+                    else if (d == 2) { side = backFace ? VoxelFace.SOUTH  : VoxelFace.NORTH; }
+
+                    final int face = VoxelFace.withSide(key, side);
+
+                    long layerBits = layers[2 * slot + facing];
+                    layers[2 * slot + facing] = 0;
+
+                    if (backFace) { sweptBack |= layerBits; } else { sweptFront |= layerBits; }
+
+                    while (layerBits != 0) {
+
+                        final int layer = Long.numberOfTrailingZeros(layerBits);
+                        layerBits &= layerBits - 1;
+
+                        final int plane = ((2 * slot + facing) * size + layer) * sizeV;
+
+                        for (j = 0; j < sizeV; j++) {
+
+                            long rowBits;
+
+                            while ((rowBits = planes[plane + j]) != 0) {
+
+                                /*
+                                 * The quad starts at the lowest set bit, and is as wide as the run of set bits from there.
+                                 */
+                                i = Long.numberOfTrailingZeros(rowBits);
+                                w = Long.numberOfTrailingZeros(~(rowBits >>> i));
+
+                                final long run = (w == Long.SIZE ? -1L : (1L << w) - 1) << i;
+
+                                /*
+                                 * Then we grow the height for as long as the following rows contain the whole run,
+                                 * clearing the run from each row as it's merged.
+                                 */
+                                planes[plane + j] = rowBits & ~run;
+
+                                for (h = 1; j + h < sizeV && (planes[plane + j + h] & run) == run; h++) {
+
+                                    planes[plane + j + h] &= ~run;
+                                }
+
+                                x[d] = backFace ? layer : layer + 1;
+                                x[u] = i;
+                                x[v] = j;
+
+                                du[0] = 0;
+                                du[1] = 0;
+                                du[2] = 0;
+                                du[u] = w;
+
+                                dv[0] = 0;
+                                dv[1] = 0;
+                                dv[2] = 0;
+                                dv[v] = h;
+
+                                buffer.quad(x, du, dv, face, backFace);
+                            }
+                        }
+                    }
+                }
+            }
+
+            buffer.swept(d == 0 ? VoxelFace.WEST : d == 1 ? VoxelFace.BOTTOM : VoxelFace.SOUTH, Long.bitCount(sweptBack));
+            buffer.swept(d == 0 ? VoxelFace.EAST : d == 1 ? VoxelFace.TOP    : VoxelFace.NORTH, Long.bitCount(sweptFront));
+        }
+
+        return buffer;
+    }
+}
@@ -0,0 +1,420 @@
+package mygame;
+
+import com.jme3.app.Application;
+import com.jme3.material.Material;
+import com.jme3.material.RenderState.BlendMode;
+import com.jme3.renderer.queue.RenderQueue.Bucket;
+import com.jme3.scene.Geometry;
+import com.jme3.scene.Mesh;
+import com.jme3.scene.Node;
+import com.jme3.scene.Spatial;
+import com.jme3.scene.VertexBuffer;
+import com.jme3.scene.VertexBuffer.Type;
+import com.jme3.util.BufferUtils;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class meshes chunks in the background, so that loading a chunk never blocks a frame.
+ *
+ * Each chunk submitted is meshed as a job on the executor - the mesher is stateless, so any
+ * number of jobs can run at once.  When a job completes, the mesh is handed back to the render
+ * thread through Application.enqueue, where it replaces any geometry previously attached for
+ * the same chunk.  The scene graph is only ever touched on the render thread.
+ *
+ * Each chunk is attached as a node holding a geometry for each render layer it has faces in (see
+ * RenderLayer), all sharing the same vertex buffers.  Opaque and cutout geometries go in the opaque
+ * bucket, which jME draws front to back with depth writes - jME has no bucket of its own for cutout
+ * faces, so their material discards the see-through pixels instead.  Translucent geometries go in the
+ * transparent bucket, which is drawn after it, sorted back to front, with blending and without depth
+ * writes - so only the translucent part of each chunk is ever sorted.
+ *
+ * A job which fails is reported through Application.handleError on the render thread, just as an
+ * exception thrown there would be - its future completes with the failure too.
+ *
+ * Given metrics, the time each job waits on the executor before it starts is recorded in
+ * them - and each job is recorded as a Flight Recorder event (see MeshEvents).
+ *
+ * The data of a chunk - including the neighbours' borders in its padding - must not be modified
+ * once it has been submitted, until its job has completed - to change a chunk, submit a new copy
+ * of its data.
+ *
+ * @author Rob O'Leary
+ */
+public class ChunkMeshingService {
+
+    private final Application application;
+    private final ExecutorService executor;
+    private final Mesher mesher;
+    private final MeshingMetrics metrics;
+    private final Node parent;
+    private final Material[] materials;
+    private final float voxelSize;
+
+    /*
+     * Mesh buffers are handed from the workers to the render thread with each result, and
+     * returned here once the mesh has been built - so the buffer arrays are reused between jobs.
+     */
+    private final Queue<MeshBuffer> buffers = new ConcurrentLinkedQueue<MeshBuffer>();
+
+    /*
+     * This keeps the latest job submitted for each chunk - a job which completes after a newer
+     * job for the same chunk has been submitted is dropped, so a stale mesh never replaces a newer one.
+     * A chunk's entry is removed when it's unloaded.
+     */
+    private final AtomicLong jobs = new AtomicLong();
+    private final ConcurrentHashMap<String, Long> latest = new ConcurrentHashMap<String, Long>();
+
+    /**
+     * Creates a service running its jobs on the given executor and attaching the chunk
+     * geometries to the given node.  The material is used for opaque faces - the materials of
+     * the cutout and translucent faces are copies of it, discarding the see-through pixels and
+     * blending without depth writes respectively.
+     *
+     * @param application
+     * @param executor
+     * @param mesher
+     * @param metrics the metrics to record the queue wait of each job in - or null
+     * @param parent
+     * @param material
+     * @param voxelSize
+     */
+    public ChunkMeshingService(final Application application,
+                               final ExecutorService executor,
+                               final Mesher mesher,
+                               final MeshingMetrics metrics,
+                               final Node parent,
+                               final Material material,
+                               final float voxelSize) {
+
+        this(application, executor, mesher, metrics, parent, material, cutout(material), translucent(material), voxelSize);
+    }
+
+    /**
+     * Creates a service with a material of its own for each render layer.
+     *
+     * @param application
+     * @param executor
+     * @param mesher
+     * @param metrics the metrics to record the queue wait of each job in - or null
+     * @param parent
+     * @param opaque
+     * @param cutout
+     * @param translucent
+     * @param voxelSize
+     */
+    public ChunkMeshingService(final Application application,
+                               final ExecutorService executor,
+                               final Mesher mesher,
+                               final MeshingMetrics metrics,
+                               final Node parent,
+                               final Material opaque,
+                               final Material cutout,
+                               final Material translucent,
+                               final float voxelSize) {
+
+        this.application = application;
+        this.executor = executor;
+        this.mesher = mesher;
+        this.metrics = metrics;
+        this.parent = parent;
+        this.materials = new Material[] { opaque, cutout, translucent };
+        this.voxelSize = voxelSize;
+    }
+
+    /**
+     * This function submits a chunk for meshing - it returns immediately, and the chunk
+     * geometry is attached on the render thread once the job has completed.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     * @param chunk
+     * @return the job, which completes once the mesh has been built
+     */
+    public Future<?> submit(final int chunkX, final int chunkY, final int chunkZ, final Chunk chunk) {
+
+        final String name = name(chunkX, chunkY, chunkZ);
+        final long job = jobs.incrementAndGet();
+        final long submitted = System.nanoTime();
+
+        latest.put(name, job);
+
+        return executor.submit(new Runnable() {
+
+            public void run() {
+
+                if (metrics != null) {
+                    metrics.recordQueueWait(System.nanoTime() - submitted);
+                }
+
+                MeshBuffer buffer = buffers.poll();
+
+                if (buffer == null) {
+                    buffer = new MeshBuffer(voxelSize, ChunkMesher.maskSize(chunk));
+                }
+
+                /*
+                 * Once the result has been handed to the render thread, it's returned from there -
+                 * until then, it's returned here, whether the job succeeds or not.
+                 */
+                boolean handed = false;
+
+                try {
+
+                    final Object event = MeshEvents.begin();
+
+                    mesher.mesh(chunk, buffer);
+
+                    MeshEvents.commit(event, chunkX, chunkY, chunkZ, chunk, mesher.getName(), buffer);
+
+                    final MeshBuffer result = buffer;
+
+                    application.enqueue(new Callable<Void>() {
+
+                        public Void call() {
+
+                            try {
+
+                                if (isLatest(name, job)) {
+                                    attach(chunkX, chunkY, chunkZ, chunk, name, result);
+                                }
+
+                            } finally {
+                                buffers.offer(result);
+                            }
+
+                            return null;
+                        }
+                    });
+
+                    handed = true;
+
+                } catch (final RuntimeException e) {
+
+                    application.enqueue(new Callable<Void>() {
+
+                        public Void call() {
+
+                            application.handleError("Meshing " + name + " with the " + mesher.getName() + " mesher failed", e);
+
+                            return null;
+                        }
+                    });
+
+                    throw e;
+
+                } finally {
+
+                    if (!handed) {
+                        buffers.offer(buffer);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * This function unloads a chunk - its geometry is detached on the render thread, and any job
+     * for it still running is dropped when it completes.  Submitting the chunk again loads it again.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     */
+    public void unload(final int chunkX, final int chunkY, final int chunkZ) {
+
+        final String name = name(chunkX, chunkY, chunkZ);
+
+        latest.remove(name);
+
+        application.enqueue(new Callable<Void>() {
+
+            public Void call() {
+
+                /*
+                 * If the chunk was submitted again in the meantime, its new geometry replaces the old one.
+                 */
+                final Spatial previous = parent.getChild(name);
+
+                if (previous != null && !latest.containsKey(name)) {
+                    previous.removeFromParent();
+                }
+
+                return null;
+            }
+        });
+    }
+
+    private boolean isLatest(final String name, final long job) {
+
+        final Long current = latest.get(name);
+
+        return current != null && current == job;
+    }
+
+    /**
+     * This function stops the executor - jobs already submitted still run, but their
+     * results are only attached if the application is still running.
+     */
+    public void shutdown() {
+
+        executor.shutdown();
+    }
+
+    /**
+     * This function renders the chunk as a node with a geometry for each layer it has faces in,
+     * replacing the previous node of the chunk if there was one.  The chunk is placed by its
+     * coordinates times its size along each axis.  It must be called on the render thread.
+     */
+    private void attach(final int chunkX,
+                        final int chunkY,
+                        final int chunkZ,
+                        final Chunk chunk,
+                        final String name,
+                        final MeshBuffer buffer) {
+
+        final Spatial previous = parent.getChild(name);
+
+        if (previous != null) {
+            previous.removeFromParent();
+        }
+
+        /*
+         * A chunk where every face was culled has nothing to render.
+         */
+        if (buffer.isEmpty()) {
+            return;
+        }
+
+        final Node node = new Node(name);
+        final Mesh[] meshes = createMeshes(buffer);
+
+        for (final RenderLayer layer : RenderLayer.values()) {
+
+            final Mesh mesh = meshes[layer.ordinal()];
+
+            if (mesh == null) {
+                continue;
+            }
+
+            final Geometry geo = new Geometry(name + " " + layer, mesh);
+
+            geo.setMaterial(materials[layer.ordinal()]);
+            geo.setQueueBucket(layer == RenderLayer.TRANSLUCENT ? Bucket.Transparent : Bucket.Opaque);
+
+            node.attachChild(geo);
+        }
+
+        node.setLocalTranslation(chunkX * chunk.getWidth() * voxelSize,
+                                 chunkY * chunk.getHeight() * voxelSize,
+                                 chunkZ * chunk.getDepth() * voxelSize);
+
+        parent.attachChild(node);
+    }
+
+    /**
+     * This function turns the quads collected in the buffer into a mesh per render layer - indexed
+     * by the ordinal of the layer, and null where the layer has no quads.  Batching the quads this
+     * way means a chunk costs one draw call per layer, rather than one per quad.
+     *
+     * The vertex buffers are allocated once per chunk at their exact size, and the used part
+     * of the buffer arrays is copied straight into them.  The position and color buffers are
+     * shared by the meshes of every layer - only the index buffers are their own.
+     *
+     * @param buffer
+     * @return
+     */
+    public static Mesh[] createMeshes(final MeshBuffer buffer) {
+
+        final FloatBuffer positions = BufferUtils.createFloatBuffer(buffer.getVertexCount() * 3);
+        final FloatBuffer colors    = BufferUtils.createFloatBuffer(buffer.getVertexCount() * 4);
+
+        positions.put(buffer.getPositions(), 0, buffer.getVertexCount() * 3).flip();
+        colors.put(buffer.getColors(), 0, buffer.getVertexCount() * 4).flip();
+
+        final Mesh[] meshes = new Mesh[RenderLayer.values().length];
+
+        VertexBuffer positionBuffer = null;
+        VertexBuffer colorBuffer = null;
+
+        for (final RenderLayer layer : RenderLayer.values()) {
+
+            if (buffer.isEmpty(layer)) {
+                continue;
+            }
+
+            final IntBuffer indexes = BufferUtils.createIntBuffer(buffer.getIndexCount(layer));
+
+            indexes.put(buffer.getIndexes(layer), 0, buffer.getIndexCount(layer)).flip();
+
+            final Mesh mesh = new Mesh();
+
+            if (positionBuffer == null) {
+
+                mesh.setBuffer(Type.Position, 3, positions);
+                mesh.setBuffer(Type.Color,    4, colors);
+
+                positionBuffer = mesh.getBuffer(Type.Position);
+                colorBuffer = mesh.getBuffer(Type.Color);
+
+            } else {
+
+                mesh.setBuffer(positionBuffer);
+                mesh.setBuffer(colorBuffer);
+            }
+
+            mesh.setBuffer(Type.Index, 3, indexes);
+            mesh.updateBound();
+
+            meshes[layer.ordinal()] = mesh;
+        }
+
+        return meshes;
+    }
+
+    /**
+     * This function copies a material for cutout faces - which discards the pixels of the faces
+     * with less than half alpha.
+     *
+     * @param material
+     * @return
+     */
+    private static Material cutout(final Material material) {
+
+        final Material cutout = material.clone();
+
+        cutout.setFloat("AlphaDiscardThreshold", 0.5f);
+
+        return cutout;
+    }
+
+    /**
+     * This function copies a material for translucent faces - which blends them with what's
+     * behind them, without writing depth, so the faces behind them still show through.
+     *
+     * @param material
+     * @return
+     */
+    private static Material translucent(final Material material) {
+
+        final Material translucent = material.clone();
+
+        translucent.getAdditionalRenderState().setBlendMode(BlendMode.Alpha);
+        translucent.getAdditionalRenderState().setDepthWrite(false);
+
+        return translucent;
+    }
+
+    private static String name(final int chunkX, final int chunkY, final int chunkZ) {
+
+        return "Chunk " + chunkX + "," + chunkY + "," + chunkZ;
+    }
+}
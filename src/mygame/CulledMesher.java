@@ -0,0 +1,128 @@
+package mygame;
+
+/**
+ * This mesher produces a quad for every exposed face of the chunk, without merging them.  It reads
+ * the exposed faces straight from the masks kept by the chunk (see Chunk.getExposedFaces), so it does
+ * far less work per chunk than greedy meshing - at the cost of many more triangles to draw, on smooth
+ * terrain at least.  On noisy chunks, where few faces would merge, it produces almost as few.
+ *
+ * @author Rob O'Leary
+ */
+public class CulledMesher implements Mesher {
+
+    private final MeshingMetrics metrics;
+
+    public CulledMesher() {
+
+        this(null);
+    }
+
+    /**
+     * Creates a mesher which records the cost of meshing every chunk in the given metrics - or
+     * none if they're null.
+     *
+     * @param metrics
+     */
+    public CulledMesher(final MeshingMetrics metrics) {
+
+        this.metrics = metrics;
+    }
+
+    public String getName() { return "culled"; }
+
+    public MeshBuffer mesh(final Chunk chunk, final MeshBuffer buffer) {
+
+        final long allocated = metrics == null ? 0 : MeshingMetrics.allocatedBytes();
+        final long start = metrics == null ? 0 : System.nanoTime();
+
+        buffer.clear();
+
+        final int width = chunk.getWidth();
+        final int height = chunk.getHeight();
+        final int depth = chunk.getDepth();
+
+        final byte[] faces = chunk.faces();
+        final int[] palette = chunk.palette();
+
+        final int[] x = new int []{0,0,0};
+        final int[] du = new int[]{0,0,0};
+        final int[] dv = new int[]{0,0,0};
+
+        for (int z = 0; z < depth; z++) {
+
+            for (int y = 0; y < height; y++) {
+
+                for (int index = chunk.index(0, y, z), i = 0; i < width; i++, index++) {
+
+                    final int exposed = faces[index];
+
+                    if (exposed == 0) {
+                        continue;
+                    }
+
+                    final int key = palette[chunk.paletteIndex(index)];
+
+                    for (int side = 0; side < 6; side++) {
+
+                        if ((exposed & (1 << side)) != 0) {
+
+                            x[0] = i;
+                            x[1] = y;
+                            x[2] = z;
+
+                            buffer.quad(unitQuad(side, x, du, dv), du, dv, VoxelFace.withSide(key, side), isBackFace(side));
+                        }
+                    }
+                }
+            }
+        }
+
+        if (metrics != null) {
+            metrics.record(start, allocated, null, buffer);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Whether the face on the given side faces backwards along its axis - as the back faces of
+     * ChunkMesher.greedy() do.
+     */
+    static boolean isBackFace(final int side) {
+
+        return side == VoxelFace.WEST || side == VoxelFace.BOTTOM || side == VoxelFace.SOUTH;
+    }
+
+    /**
+     * This function turns the position of a voxel into the corner and edges of the single voxel
+     * quad on the given side of it, in the same form as ChunkMesher.greedy() emits them - returning
+     * the corner.
+     */
+    static int[] unitQuad(final int side, final int[] x, final int[] du, final int[] dv) {
+
+        final int d;
+
+        if (side == VoxelFace.WEST || side == VoxelFace.EAST)         { d = 0; }
+        else if (side == VoxelFace.BOTTOM || side == VoxelFace.TOP)   { d = 1; }
+        else                                                          { d = 2; }
+
+        /*
+         * A front face lies on the far side of the voxel.
+         */
+        if (!isBackFace(side)) {
+            x[d]++;
+        }
+
+        du[0] = 0;
+        du[1] = 0;
+        du[2] = 0;
+        du[(d + 1) % 3] = 1;
+
+        dv[0] = 0;
+        dv[1] = 0;
+        dv[2] = 0;
+        dv[(d + 2) % 3] = 1;
+
+        return x;
+    }
+}
@@ -0,0 +1,140 @@
+package mygame;
+
+import java.util.Random;
+
+/**
+ * This is seeded 3D gradient noise - Ken Perlin's improved noise, with the permutation table
+ * shuffled from the seed rather than fixed, so that each seed gives a different but repeatable
+ * field.  The noise is 0 at every integer point and lies roughly between -1 and 1.
+ *
+ * An instance is immutable once created, so it can be sampled by any number of threads at once.
+ *
+ * @author Rob O'Leary
+ */
+public class GradientNoise {
+
+    /*
+     * This is the permutation table, repeated twice so that lookups never need wrapping.
+     */
+    private final int[] permutation = new int[512];
+
+    /**
+     * Creates the noise field for the given seed.
+     *
+     * @param seed
+     */
+    public GradientNoise(final long seed) {
+
+        final Random random = new Random(seed);
+
+        for (int i = 0; i < 256; i++) {
+            permutation[i] = i;
+        }
+
+        for (int i = 255; i > 0; i--) {
+
+            final int j = random.nextInt(i + 1);
+            final int swap = permutation[i];
+
+            permutation[i] = permutation[j];
+            permutation[j] = swap;
+        }
+
+        System.arraycopy(permutation, 0, permutation, 256, 256);
+    }
+
+    /**
+     * This function samples the noise at a point.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public double noise(double x, double y, double z) {
+
+        final int floorX = (int) Math.floor(x);
+        final int floorY = (int) Math.floor(y);
+        final int floorZ = (int) Math.floor(z);
+
+        /*
+         * The unit cube containing the point, and the position of the point within it.
+         */
+        final int X = floorX & 255;
+        final int Y = floorY & 255;
+        final int Z = floorZ & 255;
+
+        x -= floorX;
+        y -= floorY;
+        z -= floorZ;
+
+        final double u = fade(x);
+        final double v = fade(y);
+        final double w = fade(z);
+
+        /*
+         * The hashes of the 8 corners of the cube - each picks the gradient at its corner.
+         */
+        final int A  = permutation[X] + Y;
+        final int AA = permutation[A] + Z;
+        final int AB = permutation[A + 1] + Z;
+        final int B  = permutation[X + 1] + Y;
+        final int BA = permutation[B] + Z;
+        final int BB = permutation[B + 1] + Z;
+
+        return lerp(w, lerp(v, lerp(u, grad(permutation[AA],     x,     y,     z),
+                                       grad(permutation[BA],     x - 1, y,     z)),
+                               lerp(u, grad(permutation[AB],     x,     y - 1, z),
+                                       grad(permutation[BB],     x - 1, y - 1, z))),
+                       lerp(v, lerp(u, grad(permutation[AA + 1], x,     y,     z - 1),
+                                       grad(permutation[BA + 1], x - 1, y,     z - 1)),
+                               lerp(u, grad(permutation[AB + 1], x,     y - 1, z - 1),
+                                       grad(permutation[BB + 1], x - 1, y - 1, z - 1))));
+    }
+
+    /**
+     * This function sums several octaves of the noise - each at twice the frequency and half the
+     * amplitude of the last - scaled so that the result still lies roughly between -1 and 1.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param octaves
+     * @return
+     */
+    public double fractal(final double x, final double y, final double z, final int octaves) {
+
+        double sum = 0;
+        double amplitude = 1;
+        double frequency = 1;
+        double total = 0;
+
+        for (int octave = 0; octave < octaves; octave++) {
+
+            sum += noise(x * frequency, y * frequency, z * frequency) * amplitude;
+            total += amplitude;
+
+            amplitude /= 2;
+            frequency *= 2;
+        }
+
+        return sum / total;
+    }
+
+    private static double fade(final double t) { return t * t * t * (t * (t * 6 - 15) + 10); }
+
+    private static double lerp(final double t, final double a, final double b) { return a + t * (b - a); }
+
+    /**
+     * This function picks one of 12 gradient directions from the low bits of the hash, and
+     * returns its dot product with the offset of the point.
+     */
+    private static double grad(final int hash, final double x, final double y, final double z) {
+
+        final int h = hash & 15;
+        final double u = h < 8 ? x : y;
+        final double v = h < 4 ? y : h == 12 || h == 14 ? x : z;
+
+        return ((h & 1) == 0 ? u : -u) + ((h & 2) == 0 ? v : -v);
+    }
+}
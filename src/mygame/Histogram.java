@@ -0,0 +1,135 @@
+package mygame;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This is a histogram of non-negative values, such as times in nanoseconds or counts of quads,
+ * from which percentiles can be read.  Values below 16 are counted exactly, and above that each
+ * power of two is split into 8 buckets - so any percentile is within 1/8th of the true value, and
+ * the histogram takes the same few KB however many values it's given.
+ *
+ * Values are recorded without locking, so any number of threads can record at once.
+ *
+ * @author Rob O'Leary
+ */
+public class Histogram implements HistogramMBean {
+
+    private static final int EXACT = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = EXACT + (Long.SIZE - 4) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * This function adds a value to the histogram - negative values are ignored.
+     *
+     * @param value
+     */
+    public void record(final long value) {
+
+        if (value < 0) {
+            return;
+        }
+
+        counts.incrementAndGet(bucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long previous;
+
+        while (value > (previous = max.get()) && !max.compareAndSet(previous, value)) {}
+    }
+
+    public long getCount() { return count.get(); }
+
+    public long getTotal() { return total.get(); }
+
+    public long getMax() { return max.get(); }
+
+    public double getMean() {
+
+        final long n = count.get();
+
+        return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    public long getP50() { return percentile(0.5); }
+
+    public long getP90() { return percentile(0.9); }
+
+    public long getP99() { return percentile(0.99); }
+
+    public long getP999() { return percentile(0.999); }
+
+    /**
+     * This function returns the value below which the given fraction of the values lie - or
+     * rather the highest value of the bucket it falls in, capped at the largest value recorded.
+     *
+     * @param fraction
+     * @return
+     */
+    public long percentile(final double fraction) {
+
+        final long n = count.get();
+
+        if (n == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(fraction * n));
+
+        long seen = 0;
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+
+            seen += counts.get(bucket);
+
+            if (seen >= rank) {
+                return Math.min(upperBound(bucket), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    public void reset() {
+
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            counts.set(bucket, 0);
+        }
+
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    private static int bucket(final long value) {
+
+        if (value < EXACT) {
+            return (int) value;
+        }
+
+        final int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        final int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return EXACT + (exponent - 4) * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(final int bucket) {
+
+        if (bucket < EXACT) {
+            return bucket;
+        }
+
+        final int exponent = (bucket - EXACT) / SUB_BUCKETS + 4;
+        final int sub = (bucket - EXACT) % SUB_BUCKETS;
+        final long width = 1L << (exponent - SUB_BUCKET_BITS);
+
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
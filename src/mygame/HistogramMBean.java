@@ -0,0 +1,27 @@
+package mygame;
+
+/**
+ * This is the management interface of a Histogram, through which JMX clients read its percentiles.
+ *
+ * @author Rob O'Leary
+ */
+public interface HistogramMBean {
+
+    long getCount();
+
+    long getTotal();
+
+    long getMax();
+
+    double getMean();
+
+    long getP50();
+
+    long getP90();
+
+    long getP99();
+
+    long getP999();
+
+    void reset();
+}
@@ -0,0 +1,229 @@
+package mygame;
+
+/**
+ * This class keeps the greedy mesh of a chunk up to date as its voxels are edited, remeshing
+ * only the slices that an edit can have changed.
+ *
+ * The quads of each slice - in each of the 6 directions - are kept in a buffer of their own.  A
+ * slice's quads only depend on the two layers of voxels either side of it, so changing a voxel can
+ * only change the two slices either side of it on each axis.  Editing a voxel marks those slices
+ * dirty, and update remeshes just the dirty slices and splices the quads of all the slices back
+ * into the chunk's buffer, in the same order as a full greedy() sweep - so the result is the same
+ * as remeshing the whole chunk.
+ *
+ * The chunk's voxel data is owned by this class once it's been handed over - it should only be
+ * changed through set.  This class isn't thread safe - each instance should be confined to a
+ * single thread, typically the one applying the player's edits.
+ *
+ * @author Rob O'Leary
+ */
+public class IncrementalChunkMesh {
+
+    private final ChunkMesher mesher;
+    private final Chunk chunk;
+
+    /*
+     * These are the quads and dirty flags of each slice, indexed by direction and then by slice + 1.
+     * The directions are numbered as in the greedy() sweep - the 3 back faces, then the 3 front faces.
+     * There are size + 1 slices in each direction, for the size of the chunk along its axis - from
+     * the one in front of the chunk, at -1, to the one behind it, at size - 1.
+     */
+    private final MeshBuffer[][] slices;
+    private final boolean[][] dirty;
+    private boolean changed;
+
+    private final MeshBuffer buffer;
+
+    /**
+     * Creates the mesh of a chunk - every slice starts out dirty, so the first update meshes
+     * the whole chunk.
+     *
+     * @param mesher
+     * @param chunk
+     * @param voxelSize
+     */
+    public IncrementalChunkMesh(final ChunkMesher mesher, final Chunk chunk, final float voxelSize) {
+
+        this.mesher = mesher;
+        this.chunk = chunk;
+        this.slices = new MeshBuffer[6][];
+        this.dirty = new boolean[6][];
+        this.buffer = new MeshBuffer(voxelSize, ChunkMesher.maskSize(chunk));
+
+        for (int direction = 0; direction < 6; direction++) {
+
+            final int sliceCount = chunk.getSize(direction % 3) + 1;
+
+            slices[direction] = new MeshBuffer[sliceCount];
+            dirty[direction] = new boolean[sliceCount];
+
+            for (int slice = 0; slice < sliceCount; slice++) {
+
+                slices[direction][slice] = new MeshBuffer(voxelSize, 1);
+                dirty[direction][slice] = true;
+            }
+        }
+
+        changed = true;
+    }
+
+    /**
+     * This function changes a single voxel, marking the slices either side of it dirty.  The
+     * coordinates run from -1 to the size along each axis, as in Chunk.set - a voxel of the padding
+     * only has the slice on the border of the chunk beside it, so only that slice is marked dirty.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @param face
+     */
+    public void set(final int x, final int y, final int z, final VoxelFace face) {
+
+        final int[] position = new int[]{x, y, z};
+
+        /*
+         * The coordinates are checked before anything is changed, so that a bad edit can't leave
+         * the voxel changed without its slices being marked dirty.
+         */
+        for (int d = 0; d < 3; d++) {
+
+            if (position[d] < -1 || position[d] > chunk.getSize(d)) {
+                throw new IllegalArgumentException("Voxel " + x + "," + y + "," + z + " is outside the chunk and its padding");
+            }
+        }
+
+        chunk.set(x, y, z, face);
+
+        for (int d = 0; d < 3; d++) {
+
+            /*
+             * The voxel lies between slice position[d] - 1 in front of it and slice position[d]
+             * behind it - which are at indexes position[d] and position[d] + 1.  In the padding,
+             * one of them lies outside the chunk, and the border slice is marked twice instead.
+             */
+            final int last = chunk.getSize(d);
+
+            for (int direction = d; direction < 6; direction += 3) {
+
+                dirty[direction][Math.max(0, position[d])]        = true;
+                dirty[direction][Math.min(last, position[d] + 1)] = true;
+            }
+        }
+
+        changed = true;
+    }
+
+    /**
+     * This function copies the border of the chunk on the given side of this one - or clears it 
+     * if there's none - marking the slice on that border of the chunk dirty.  See Chunk.setNeighbour - 
+     * this needs calling again whenever the border of the neighbour changes.
+     *
+     * @param side
+     * @param neighbour
+     */
+    public void setNeighbour(final int side, final Chunk neighbour) {
+
+        chunk.setNeighbour(side, neighbour);
+
+        /*
+         * The padding only touches the slice between it and the chunk - the first slice along the
+         * axis of the side, or the last - in both directions along that axis.
+         */
+        final int d;
+
+        if (side == VoxelFace.WEST || side == VoxelFace.EAST)         { d = 0; }
+        else if (side == VoxelFace.BOTTOM || side == VoxelFace.TOP)   { d = 1; }
+        else                                                          { d = 2; }
+
+        final boolean front = side == VoxelFace.WEST || side == VoxelFace.BOTTOM || side == VoxelFace.SOUTH;
+
+        for (int direction = d; direction < 6; direction += 3) {
+
+            dirty[direction][front ? 0 : dirty[direction].length - 1] = true;
+        }
+
+        changed = true;
+    }
+
+    /**
+     * The packed key of a voxel - see Chunk.get.
+     */
+    public int get(final int x, final int y, final int z) {
+
+        return chunk.get(x, y, z);
+    }
+
+    /**
+     * Whether there are edits which haven't been meshed yet.
+     *
+     * @return
+     */
+    public boolean isDirty() { return changed; }
+
+    /**
+     * This function remeshes the dirty slices and returns the buffer holding the quads of the
+     * whole chunk.  The buffer is reused by the next update.
+     *
+     * @return
+     */
+    public MeshBuffer update() {
+
+        if (!changed) {
+            return buffer;
+        }
+
+        /*
+         * If the mesher keeps metrics, each update is recorded as the meshing of a chunk.
+         */
+        final boolean timed = mesher.getMetrics() != null;
+
+        final long allocated = timed ? MeshingMetrics.allocatedBytes() : 0;
+        final long start = timed ? System.nanoTime() : 0;
+        final long[] timings = timed ? new long[MeshingMetrics.PHASES] : null;
+
+        /*
+         * The mask is taken from the pool of the thread, so a chunk keeps no mask of its own between updates.
+         */
+        final MeshScratch scratch = MeshScratch.get(chunk);
+
+        int direction = 0;
+
+        for (boolean backFace = true, b = false; b != backFace; backFace = backFace && b, b = !b) {
+
+            for (int d = 0; d < 3; d++, direction++) {
+
+                for (int slice = 0; slice < slices[direction].length; slice++) {
+
+                    if (dirty[direction][slice]) {
+
+                        slices[direction][slice].clear();
+                        mesher.greedy(chunk, backFace, d, slice - 1, slice, scratch.mask, scratch.quads, slices[direction][slice], timings);
+
+                        dirty[direction][slice] = false;
+                    }
+                }
+            }
+        }
+
+        /*
+         * And then the quads of all the slices are spliced back together.
+         */
+        buffer.clear();
+
+        for (direction = 0; direction < 6; direction++) {
+
+            for (int slice = 0; slice < slices[direction].length; slice++) {
+
+                buffer.append(slices[direction][slice]);
+            }
+        }
+
+        changed = false;
+
+        if (timed) {
+            mesher.getMetrics().record(start, allocated, timings, buffer);
+        }
+
+        return buffer;
+    }
+}
@@ -2,12 +2,11 @@ package mygame;
 
 import com.jme3.app.SimpleApplication;
 import com.jme3.material.Material;
-import com.jme3.math.Vector3f;
-import com.jme3.scene.Geometry;
-import com.jme3.scene.Mesh;
-import com.jme3.scene.VertexBuffer.Type;
 import com.jme3.system.AppSettings;
-import com.jme3.util.BufferUtils;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This is a Java greedy meshing implementation based on the javascript implementation 
@@ -37,54 +36,60 @@ public class Main extends SimpleApplication {
     
     /*
      * These are the chunk dimensions - it may not be the case in every voxel engine that 
-     * the data is rendered in chunks - but this demo assumes so.  Anyway the chunk size is 
-     * just used to populate the sample data array.  Also, in reality the chunk size will likely 
-     * be larger - for example, in my voxel engine chunks are 16x16x16 - but the small size 
-     * here allows for a simple demostration.
+     * the data is rendered in chunks - but this demo assumes so.  The mesher takes the size 
+     * from the chunk itself, so here it's just used to populate the sample data.  Also, in reality 
+     * the chunk size will likely be larger - for example, in my voxel engine chunks are 16x16x16 - 
+     * but the small size here allows for a simple demostration.  Chunks needn't be cubic - the 
+     * width, height and depth, along x, y and z, can each be set independently, for example to 
+     * 16x256x16 for tall columns.
+     * 
+     * The size is read from the mygame.chunkSize system property when the demo starts, so it can 
+     * be changed without recompiling - either a single size for cubic chunks, such as 32, or the 
+     * width, height and depth, such as 16x256x16.  The mesher draws its masks from a pool kept 
+     * for each size, so any size can be used.
      */
-    private static final int CHUNK_WIDTH = 3;
-    private static final int CHUNK_HEIGHT = 3;
+    private static final int[] CHUNK_SIZE = parseChunkSize(System.getProperty("mygame.chunkSize", "3"));
+
+    private static final int CHUNK_WIDTH = CHUNK_SIZE[0];
+    private static final int CHUNK_HEIGHT = CHUNK_SIZE[1];
+    private static final int CHUNK_DEPTH = CHUNK_SIZE[2];
     
     /*
-     * This is a 3D array of sample data - I'm using voxel faces here because I'm returning 
-     * the same data for each face in this example - but calls to the getVoxelFace function below 
-     * will return variations on voxel data per face in a real engine.  For example, in my system 
-     * each voxel has a type, temperature, humidity, etc - which are constant across all faces, and 
-     * then attributes like sunlight, artificial light which face per face or even per vertex.
+     * This is the sample data - I'm using voxel faces here because I'm returning the same data 
+     * for each face in this example - but a real engine will have variations on voxel data per face.  
+     * For example, in my system each voxel has a type, temperature, humidity, etc - which are constant 
+     * across all faces, and then attributes like sunlight, artificial light which face per face or even 
+     * per vertex.  The chunk stores the faces as indexes into a palette of packed keys, in a padded 
+     * flat array, which is what the mesher reads.
      */
-    private final VoxelFace [][][] voxels = new VoxelFace [CHUNK_WIDTH][CHUNK_HEIGHT][CHUNK_WIDTH];
+    private final Chunk chunk = new Chunk(CHUNK_WIDTH, CHUNK_HEIGHT, CHUNK_DEPTH);
 
     /*
-     * These are just constants to keep track of which face we're dealing with - their actual 
-     * values are unimportantly - only that they're constant.
+     * This is the number of worker threads meshing chunks in the background - one core is 
+     * left over for the render thread.
      */
-    private static final int SOUTH      = 0;
-    private static final int NORTH      = 1;
-    private static final int EAST       = 2;
-    private static final int WEST       = 3;
-    private static final int TOP        = 4;
-    private static final int BOTTOM     = 5;    
-    
-    /**
-     * This class is used to encapsulate all information about a single voxel face.  Any number of attributes can be 
-     * included - and the equals function will be called in order to compare faces.  This is important because it 
-     * allows different faces of the same voxel to be merged based on varying attributes.
-     * 
-     * Each face can contain vertex data - for example, int[] sunlight, in order to compare vertex attributes.
-     * 
-     * Since it's optimal to combine greedy meshing with face culling, I have included a "transparent" attribute here 
-     * and the mesher skips transparent voxel faces.  The getVoxelData function below - or whatever it's equivalent 
-     * might be when this algorithm is used in a real engine - could set the transparent attribute on faces based 
-     * on whether they should be visible or not.
+    private static final int MESHING_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    /*
+     * Chunks are meshed by this service on worker threads, and attached to the scene on the 
+     * render thread once they're done - so that loading a chunk never blocks a frame.
      */
-    class VoxelFace {
-    
-        public boolean transparent;
-        public int type;
-        public int side;
-        
-        public boolean equals(final VoxelFace face) { return face.transparent == this.transparent && face.type == this.type; }
-    }
+    private ChunkMeshingService meshing;
+
+    /*
+     * The cost of meshing each chunk is recorded here, and published through JMX under 
+     * mygame:type=MeshingMetrics - so it can be watched with jconsole or any other JMX client.
+     */
+    private final MeshingMetrics metrics = new MeshingMetrics();
+
+    /*
+     * This is the meshing algorithm - set the mygame.mesher system property to GREEDY, BINARY, CULLED, 
+     * NAIVE or ADAPTIVE to pick one (see MesherType).  GREEDY and BINARY produce the same quads - the 
+     * bitwise engine just gets there faster, but only works for chunks up to 64 voxels along every 
+     * axis.  CULLED and NAIVE are quicker still, but draw many more triangles.  ADAPTIVE picks one of 
+     * the first three for each chunk, and counts its picks in the metrics.
+     */
+    private static final MesherType MESHER = MesherType.valueOf(System.getProperty("mygame.mesher", "GREEDY"));
     
     /**
      * This is just the main function used to start the demo on JMonkey.
@@ -108,363 +113,159 @@ public class Main extends SimpleApplication {
     @Override
     public void simpleInitApp() {
 
+        Material mat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
+        mat.setBoolean("VertexColor", true);
+
+        /*
+         * To see the actual rendered quads rather than the wireframe, just comment outthis line.
+         */
+        mat.getAdditionalRenderState().setWireframe(true);
+
+        metrics.register("Main");
+
+        meshing = new ChunkMeshingService(this, 
+                                          createMeshingExecutor(), 
+                                          MESHER.create(metrics), 
+                                          metrics, 
+                                          rootNode, 
+                                          mat, 
+                                          VOXEL_SIZE);
+
+        /*
+         * The chunk only keeps the packed keys of the faces in its palette - so there's no need 
+         * for a VoxelFace per voxel, just one for each kind of voxel.
+         */
+        final VoxelFace type1 = new VoxelFace();
+        type1.type = 1;
+
+        /*
+         * To see an example of face culling being used in combination with 
+         * greedy meshing, you could set the trasparent attribute to true.
+         */
+//        type1.transparent = true;
+
+        /*
+         * Or to see the render layers, you could make them translucent - they're then drawn
+         * as a mesh of their own, half transparent, after the rest of the chunk.
+         */
+//        type1.layer = RenderLayer.TRANSLUCENT;
+
+        final VoxelFace type2 = new VoxelFace();
+        type2.type = 2;
+
+        final VoxelFace type3 = new VoxelFace();
+        type3.type = 3;
+
         VoxelFace face;
 
         for (int i = 0; i < CHUNK_WIDTH; i++) {
             
             for (int j = 0; j < CHUNK_HEIGHT; j++) {
             
-                for (int k = 0; k < CHUNK_HEIGHT; k++) {
+                for (int k = 0; k < CHUNK_DEPTH; k++) {
                 
                     if (i > CHUNK_WIDTH/2 && i < CHUNK_WIDTH*0.75 && 
                         j > CHUNK_HEIGHT/2 && j < CHUNK_HEIGHT*0.75 && 
-                        k > CHUNK_HEIGHT/2 && k < CHUNK_HEIGHT*0.75) {
+                        k > CHUNK_DEPTH/2 && k < CHUNK_DEPTH*0.75) {
 
                         /*
                          * We add a set of voxels of type 1 at the top-right of the chunk.
                          * 
                          */
-                        face = new VoxelFace();
-                        face.type = 1;
-                        
-                        /*
-                         * To see an example of face culling being used in combination with 
-                         * greedy meshing, you could set the trasparent attribute to true.
-                         */                        
-//                        face.transparent = true;
+                        face = type1;
 
                     } else if (i == 0) {
 
                         /*
                          * We add a set of voxels of type 2 on the left of the chunk. 
                          */
-                        face = new VoxelFace();
-                        face.type = 2;
+                        face = type2;
                         
                     } else {
 
                         /*
                          * And the rest are set to type 3.
                          */
-                        face = new VoxelFace();
-                        face.type = 3;
+                        face = type3;
                     }
                 
-                    voxels[i][j][k] = face;
+                    chunk.set(i, j, k, face);
                 }
             }            
         }
 
         /*
-         * And now that the sample data is prepared, we launch the greedy meshing.
+         * And now that the sample data is prepared, we launch the greedy meshing - the chunk 
+         * appears in the scene as soon as its mesh is ready.
          */
-        greedy();
+        meshing.submit(0, 0, 0, chunk);
     }
 
     /**
-     * 
+     * This function stops the meshing workers, and withdraws their metrics, when the application closes.
      */
-    void greedy() {
-
-        /*
-         * These are just working variables for the algorithm - almost all taken 
-         * directly from Mikola Lysenko's javascript implementation.
-         */
-        int i, j, k, l, w, h, u, v, n, side = 0;
-        
-        final int[] x = new int []{0,0,0};
-        final int[] q = new int []{0,0,0};
-        final int[] du = new int[]{0,0,0}; 
-        final int[] dv = new int[]{0,0,0};         
-        
-        /*
-         * We create a mask - this will contain the groups of matching voxel faces 
-         * as we proceed through the chunk in 6 directions - once for each face.
-         */
-        final VoxelFace[] mask = new VoxelFace [CHUNK_WIDTH * CHUNK_HEIGHT];
-        
-        /*
-         * These are just working variables to hold two faces during comparison.
-         */
-        VoxelFace voxelFace, voxelFace1;
-
-        /**
-         * We start with the lesser-spotted boolean for-loop (also known as the old flippy floppy). 
-         * 
-         * The variable backFace will be TRUE on the first iteration and FALSE on the second - this allows 
-         * us to track which direction the indices should run during creation of the quad.
-         * 
-         * This loop runs twice, and the inner loop 3 times - totally 6 iterations - one for each 
-         * voxel face.
-         */
-        for (boolean backFace = true, b = false; b != backFace; backFace = backFace && b, b = !b) { 
-
-            /*
-             * We sweep over the 3 dimensions - most of what follows is well described by Mikola Lysenko 
-             * in his post - and is ported from his Javascript implementation.  Where this implementation 
-             * diverges, I've added commentary.
-             */
-            for(int d = 0; d < 3; d++) {
-
-                u = (d + 1) % 3; 
-                v = (d + 2) % 3;
-
-                x[0] = 0;
-                x[1] = 0;
-                x[2] = 0;
-
-                q[0] = 0;
-                q[1] = 0;
-                q[2] = 0;
-                q[d] = 1;
-
-                /*
-                 * Here we're keeping track of the side that we're meshing.
-                 */
-                if (d == 0)      { side = backFace ? WEST   : EAST;  }
-                else if (d == 1) { side = backFace ? BOTTOM : TOP;   }
-                else if (d == 2) { side = backFace ? SOUTH  : NORTH; }                
-
-                /*
-                 * We move through the dimension from front to back
-                 */            
-                for(x[d] = -1; x[d] < CHUNK_WIDTH;) {
-
-                    /*
-                     * -------------------------------------------------------------------
-                     *   We compute the mask
-                     * -------------------------------------------------------------------
-                     */
-                    n = 0;
-
-                    for(x[v] = 0; x[v] < CHUNK_HEIGHT; x[v]++) {
-
-                        for(x[u] = 0; x[u] < CHUNK_WIDTH; x[u]++) {
-
-                            /*
-                             * Here we retrieve two voxel faces for comparison.
-                             */
-                            voxelFace  = (x[d] >= 0 )             ? getVoxelFace(x[0], x[1], x[2], side)                      : null;
-                            voxelFace1 = (x[d] < CHUNK_WIDTH - 1) ? getVoxelFace(x[0] + q[0], x[1] + q[1], x[2] + q[2], side) : null;
-
-                            /*
-                             * Note that we're using the equals function in the voxel face class here, which lets the faces 
-                             * be compared based on any number of attributes.
-                             * 
-                             * Also, we choose the face to add to the mask depending on whether we're moving through on a backface or not.
-                             */
-                            mask[n++] = ((voxelFace != null && voxelFace1 != null && voxelFace.equals(voxelFace1))) 
-                                        ? null 
-                                        : backFace ? voxelFace1 : voxelFace;
-                        }
-                    }
+    @Override
+    public void destroy() {
 
-                    x[d]++;
-
-                    /*
-                     * Now we generate the mesh for the mask
-                     */
-                    n = 0;
-
-                    for(j = 0; j < CHUNK_HEIGHT; j++) {
-
-                        for(i = 0; i < CHUNK_WIDTH;) {
-
-                            if(mask[n] != null) {
-
-                                /*
-                                 * We compute the width
-                                 */
-                                for(w = 1; i + w < CHUNK_WIDTH && mask[n + w] != null && mask[n + w].equals(mask[n]); w++) {}
-
-                                /*
-                                 * Then we compute height
-                                 */
-                                boolean done = false;
-
-                                for(h = 1; j + h < CHUNK_HEIGHT; h++) {
-
-                                    for(k = 0; k < w; k++) {
-
-                                        if(mask[n + k + h * CHUNK_WIDTH] == null || !mask[n + k + h * CHUNK_WIDTH].equals(mask[n])) { done = true; break; }
-                                    }
-
-                                    if(done) { break; }
-                                }
-
-                                /*
-                                 * Here we check the "transparent" attribute in the VoxelFace class to ensure that we don't mesh 
-                                 * any culled faces.
-                                 */
-                                if (!mask[n].transparent) {
-                                    /*
-                                     * Add quad
-                                     */
-                                    x[u] = i;  
-                                    x[v] = j;
-
-                                    du[0] = 0;
-                                    du[1] = 0;
-                                    du[2] = 0;
-                                    du[u] = w;
-
-                                    dv[0] = 0;
-                                    dv[1] = 0;
-                                    dv[2] = 0;
-                                    dv[v] = h;
-
-                                    /*
-                                     * And here we call the quad function in order to render a merged quad in the scene.
-                                     * 
-                                     * We pass mask[n] to the function, which is an instance of the VoxelFace class containing 
-                                     * all the attributes of the face - which allows for variables to be passed to shaders - for 
-                                     * example lighting values used to create ambient occlusion.
-                                     */
-                                    quad(new Vector3f(x[0],                 x[1],                   x[2]), 
-                                         new Vector3f(x[0] + du[0],         x[1] + du[1],           x[2] + du[2]), 
-                                         new Vector3f(x[0] + du[0] + dv[0], x[1] + du[1] + dv[1],   x[2] + du[2] + dv[2]), 
-                                         new Vector3f(x[0] + dv[0],         x[1] + dv[1],           x[2] + dv[2]), 
-                                         w,
-                                         h,
-                                         mask[n],
-                                         backFace);
-                                }
-
-                                /*
-                                 * We zero out the mask
-                                 */
-                                for(l = 0; l < h; ++l) {
-
-                                    for(k = 0; k < w; ++k) { mask[n + k + l * CHUNK_WIDTH] = null; }
-                                }
-
-                                /*
-                                 * And then finally increment the counters and continue
-                                 */
-                                i += w; 
-                                n += w;
-
-                            } else {
-
-                              i++;
-                              n++;
-                            }
-                        }
-                    } 
-                }
-            }        
+        if (meshing != null) {
+            meshing.shutdown();
+            metrics.unregister();
         }
+
+        super.destroy();
     }
 
     /**
-     * This function returns an instance of VoxelFace containing the attributes for 
-     * one side of a voxel.  In this simple demo we just return a value from the 
-     * sample data array.  However, in an actual voxel engine, this function would 
-     * check if the voxel face should be culled, and set per-face and per-vertex 
-     * values as well as voxel values in the returned instance.
+     * This function creates the executor used for meshing - the worker threads are daemons, 
+     * so that they never keep the application alive.
      * 
-     * @param x
-     * @param y
-     * @param z
-     * @param face
      * @return 
      */
-    VoxelFace getVoxelFace(final int x, final int y, final int z, final int side) {
+    private static ExecutorService createMeshingExecutor() {
 
-        VoxelFace voxelFace = voxels[x][y][z];
-        
-        voxelFace.side = side;
+        return Executors.newFixedThreadPool(MESHING_THREADS, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(final Runnable runnable) {
 
-        return voxelFace;
+                final Thread thread = new Thread(runnable, "Chunk Mesher " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
-    
+
     /**
-     * This function renders a single quad in the scene. This quad may represent many adjacent voxel 
-     * faces - so in order to create the illusion of many faces, you might consider using a tiling 
-     * function in your voxel shader. For this reason I've included the quad width and height as parameters.
+     * This function reads a chunk size - either a single size, for a cubic chunk, or the width, 
+     * height and depth separated by x - into the width, height and depth.
      * 
-     * For example, if your texture coordinates for a single voxel face were 0 - 1 on a given axis, they should now 
-     * be 0 - width or 0 - height. Then you can calculate the correct texture coordinate in your fragement 
-     * shader using coord.xy = fract(coord.xy). 
-     * 
-     * 
-     * @param bottomLeft
-     * @param topLeft
-     * @param topRight
-     * @param bottomRight
-     * @param width
-     * @param height
-     * @param voxel
-     * @param backFace 
+     * @param size
+     * @return 
      */
-    void quad(final Vector3f bottomLeft, 
-              final Vector3f topLeft, 
-              final Vector3f topRight, 
-              final Vector3f bottomRight,
-              final int width,
-              final int height,
-              final VoxelFace voxel, 
-              final boolean backFace) {
- 
-        final Vector3f [] vertices = new Vector3f[4];
-
-        vertices[2] = topLeft.multLocal(VOXEL_SIZE);
-        vertices[3] = topRight.multLocal(VOXEL_SIZE);
-        vertices[0] = bottomLeft.multLocal(VOXEL_SIZE);
-        vertices[1] = bottomRight.multLocal(VOXEL_SIZE);
-        
-        final int [] indexes = backFace ? new int[] { 2,0,1, 1,3,2 } : new int[]{ 2,3,1, 1,0,2 };
-        
-        final float[] colorArray = new float[4*4];
-        
-        for (int i = 0; i < colorArray.length; i+=4) {
-        
-            /*
-             * Here I set different colors for quads depending on the "type" attribute, just 
-             * so that the different groups of voxels can be clearly seen.
-             * 
-             */
-            if (voxel.type == 1) {
-                
-                colorArray[i]   = 1.0f;
-                colorArray[i+1] = 0.0f;
-                colorArray[i+2] = 0.0f;
-                colorArray[i+3] = 1.0f;                
-                
-            } else if (voxel.type == 2) {
-                
-                colorArray[i]   = 0.0f;
-                colorArray[i+1] = 1.0f;
-                colorArray[i+2] = 0.0f;
-                colorArray[i+3] = 1.0f;
-                
-            } else {
-            
-                colorArray[i]   = 0.0f;
-                colorArray[i+1] = 0.0f;
-                colorArray[i+2] = 1.0f;
-                colorArray[i+3] = 1.0f;                
-            }
+    private static int[] parseChunkSize(final String size) {
+
+        final String[] parts = size.trim().split("x");
+
+        if (parts.length != 1 && parts.length != 3) {
+            throw new IllegalArgumentException("Chunk size " + size + " is neither N nor WxHxD");
         }
-        
-        Mesh mesh = new Mesh();
-        
-        mesh.setBuffer(Type.Position, 3, BufferUtils.createFloatBuffer(vertices));
-        mesh.setBuffer(Type.Color,    4, colorArray);
-        mesh.setBuffer(Type.Index,    3, BufferUtils.createIntBuffer(indexes));
-        mesh.updateBound();
-        
-        Geometry geo = new Geometry("ColoredMesh", mesh);
-        Material mat = new Material(assetManager, "Common/MatDefs/Misc/Unshaded.j3md");
-        mat.setBoolean("VertexColor", true);
 
-        /*
-         * To see the actual rendered quads rather than the wireframe, just comment outthis line.
-         */
-        mat.getAdditionalRenderState().setWireframe(true);
-        
-        geo.setMaterial(mat);
+        final int[] dimensions = new int[3];
+
+        for (int d = 0; d < 3; d++) {
+
+            try {
+                dimensions[d] = Integer.parseInt(parts[parts.length == 1 ? 0 : d].trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Chunk size " + size + " is neither N nor WxHxD", e);
+            }
+
+            if (dimensions[d] < 1) {
+                throw new IllegalArgumentException("Chunk size " + size + " must be at least 1 along every axis");
+            }
+        }
 
-        rootNode.attachChild(geo);
+        return dimensions;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,308 @@
+package mygame;
+
+/**
+ * This class collects the vertex data of the quads produced by the mesher.  The data is written
+ * straight into primitive arrays which are kept between chunks - once the arrays have grown to fit
+ * the largest chunk, meshing allocates nothing at all per quad.  Call clear before meshing each chunk.
+ *
+ * The arrays are laid out the way the jME vertex buffers expect them - 3 floats per position, 4 floats
+ * per color and 3 indexes per triangle - so only the used part of each array needs to be copied into
+ * the buffers of the mesh.
+ *
+ * The quads are kept apart by their render layer (see RenderLayer) - the vertices of every quad go into
+ * the same arrays, but each layer has an index array of its own, so each layer can be drawn as a mesh
+ * of its own while all of them share the vertex buffers.
+ *
+ * @author Rob O'Leary
+ */
+public class MeshBuffer {
+
+    /*
+     * These are the indexes of the two triangles of a quad - the winding depends on whether
+     * the quad is a back face, so that each quad faces away from the voxel it belongs to.
+     */
+    private static final int [] BACK_FACE_INDEXES  = new int[] { 2,0,1, 1,3,2 };
+    private static final int [] FRONT_FACE_INDEXES = new int[] { 2,3,1, 1,0,2 };
+
+    private static final int LAYERS = RenderLayer.values().length;
+
+    private final float voxelSize;
+
+    private float[] positions;
+    private float[] colors;
+    private final int[][] indexes = new int[LAYERS][];
+
+    private int vertexCount;
+    private final int[] indexCounts = new int[LAYERS];
+
+    /*
+     * These are the face directions - a bit per side - in which the mesher swept any slices to fill the
+     * buffer, and the number of slices it swept, so that the work done can be reported (see MeshEvents).
+     */
+    private int sweptSides;
+    private int sweptSlices;
+
+    /**
+     * Creates an empty buffer with room for the given number of quads - the buffer grows as required.
+     *
+     * @param voxelSize
+     * @param quads
+     */
+    public MeshBuffer(final float voxelSize, final int quads) {
+
+        this.voxelSize = voxelSize;
+
+        positions = new float[quads * 4 * 3];
+        colors    = new float[quads * 4 * 4];
+
+        /*
+         * Most quads are opaque, so the other layers start small.
+         */
+        for (int layer = 0; layer < LAYERS; layer++) {
+            indexes[layer] = new int[layer == 0 ? quads * 6 : 6];
+        }
+    }
+
+    /**
+     * This function empties the buffer, keeping the arrays for the next chunk.
+     */
+    public void clear() {
+
+        vertexCount = 0;
+        sweptSides = 0;
+        sweptSlices = 0;
+
+        for (int layer = 0; layer < LAYERS; layer++) {
+            indexCounts[layer] = 0;
+        }
+    }
+
+    /**
+     * This function adds a single quad to the buffer. This quad may represent many adjacent voxel
+     * faces - so in order to create the illusion of many faces, you might consider using a tiling
+     * function in your voxel shader. The width and height of the quad are the lengths of du and dv.
+     *
+     * For example, if your texture coordinates for a single voxel face were 0 - 1 on a given axis, they should now
+     * be 0 - width or 0 - height. Then you can calculate the correct texture coordinate in your fragement
+     * shader using coord.xy = fract(coord.xy).
+     *
+     * The quad is given by its corner and the two edge vectors, which are the working arrays of the mesher -
+     * so nothing needs to be allocated to emit a quad.
+     *
+     * The quad is indexed in the render layer of the face.
+     *
+     * @param x
+     * @param du
+     * @param dv
+     * @param face
+     * @param backFace
+     */
+    public void quad(final int[] x,
+                     final int[] du,
+                     final int[] dv,
+                     final int face,
+                     final boolean backFace) {
+
+        final int layer = VoxelFace.layer(face);
+
+        ensureCapacity(layer);
+
+        final int offset = vertexCount;
+
+        /*
+         * The vertices are written as bottom left, bottom right, top left and top right.
+         */
+        position(x[0],                 x[1],                 x[2]);
+        position(x[0] + dv[0],         x[1] + dv[1],         x[2] + dv[2]);
+        position(x[0] + du[0],         x[1] + du[1],         x[2] + du[2]);
+        position(x[0] + du[0] + dv[0], x[1] + du[1] + dv[1], x[2] + du[2] + dv[2]);
+
+        final int [] quadIndexes = backFace ? BACK_FACE_INDEXES : FRONT_FACE_INDEXES;
+
+        final int[] layerIndexes = indexes[layer];
+
+        for (int i = 0; i < quadIndexes.length; i++) {
+
+            layerIndexes[indexCounts[layer]++] = offset + quadIndexes[i];
+        }
+
+        /*
+         * Here I set different colors for quads depending on the "type" attribute, just
+         * so that the different groups of voxels can be clearly seen - translucent quads are
+         * half transparent.
+         */
+        final int type = VoxelFace.type(face);
+
+        final float red   = type == 1 ? 1.0f : 0.0f;
+        final float green = type == 2 ? 1.0f : 0.0f;
+        final float blue  = type != 1 && type != 2 ? 1.0f : 0.0f;
+        final float alpha = layer == RenderLayer.TRANSLUCENT.ordinal() ? 0.5f : 1.0f;
+
+        for (int i = offset * 4; i < vertexCount * 4; i += 4) {
+
+            colors[i]   = red;
+            colors[i+1] = green;
+            colors[i+2] = blue;
+            colors[i+3] = alpha;
+        }
+    }
+
+    /**
+     * This function appends all the quads of another buffer to this one, each in its own layer.
+     *
+     * @param other
+     */
+    public void append(final MeshBuffer other) {
+
+        while (vertexCount + other.vertexCount > getVertexCapacity()) {
+            growVertices();
+        }
+
+        final int offset = vertexCount;
+
+        System.arraycopy(other.positions, 0, positions, vertexCount * 3, other.vertexCount * 3);
+        System.arraycopy(other.colors,    0, colors,    vertexCount * 4, other.vertexCount * 4);
+
+        for (int layer = 0; layer < LAYERS; layer++) {
+
+            final int count = other.indexCounts[layer];
+
+            while (indexCounts[layer] + count > indexes[layer].length) {
+                growIndexes(layer);
+            }
+
+            final int[] layerIndexes = indexes[layer];
+            final int[] otherIndexes = other.indexes[layer];
+
+            for (int i = 0; i < count; i++) {
+
+                layerIndexes[indexCounts[layer]++] = offset + otherIndexes[i];
+            }
+        }
+
+        vertexCount += other.vertexCount;
+        sweptSides |= other.sweptSides;
+        sweptSlices += other.sweptSlices;
+    }
+
+    /**
+     * This function records that the mesher swept the given number of slices of faces on the given side.
+     *
+     * @param side
+     * @param slices
+     */
+    void swept(final int side, final int slices) {
+
+        if (slices > 0) {
+            sweptSides |= 1 << side;
+            sweptSlices += slices;
+        }
+    }
+
+    private void position(final float x, final float y, final float z) {
+
+        final int i = vertexCount++ * 3;
+
+        positions[i]   = x * voxelSize;
+        positions[i+1] = y * voxelSize;
+        positions[i+2] = z * voxelSize;
+    }
+
+    /**
+     * This function makes room for one more quad in the given layer, doubling the arrays when they're full.
+     */
+    private void ensureCapacity(final int layer) {
+
+        if (vertexCount + 4 > getVertexCapacity()) {
+            growVertices();
+        }
+
+        if (indexCounts[layer] + 6 > indexes[layer].length) {
+            growIndexes(layer);
+        }
+    }
+
+    private int getVertexCapacity() { return positions.length / 3; }
+
+    private void growVertices() {
+
+        final int quads = Math.max(1, getVertexCapacity() / 4) * 2;
+
+        positions = copyOf(positions, quads * 4 * 3);
+        colors    = copyOf(colors,    quads * 4 * 4);
+    }
+
+    private void growIndexes(final int layer) {
+
+        indexes[layer] = copyOf(indexes[layer], Math.max(1, indexes[layer].length / 6) * 2 * 6);
+    }
+
+    private static float[] copyOf(final float[] array, final int length) {
+
+        final float[] copy = new float[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    private static int[] copyOf(final int[] array, final int length) {
+
+        final int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, array.length);
+        return copy;
+    }
+
+    public float getVoxelSize() { return voxelSize; }
+
+    public boolean isEmpty() { return vertexCount == 0; }
+
+    public int getVertexCount() { return vertexCount; }
+
+    /**
+     * The number of indexes in every layer together.
+     */
+    public int getIndexCount() {
+
+        int count = 0;
+
+        for (int layer = 0; layer < LAYERS; layer++) {
+            count += indexCounts[layer];
+        }
+
+        return count;
+    }
+
+    public int getIndexCount(final RenderLayer layer) { return indexCounts[layer.ordinal()]; }
+
+    public boolean isEmpty(final RenderLayer layer) { return indexCounts[layer.ordinal()] == 0; }
+
+    public int getQuadCount() { return vertexCount / 4; }
+
+    /**
+     * The number of face directions in which the mesher swept any slices - 0 for an empty chunk, or a
+     * mesher which doesn't sweep slices at all.  A buffer which other buffers were appended to counts
+     * the slices of all of them.
+     */
+    public int getSweptDirectionCount() { return Integer.bitCount(sweptSides); }
+
+    /**
+     * The number of slices the mesher swept - slices it skipped, such as those between two uniform
+     * layers, aren't counted.  The binary mesher only sweeps the slices with any faces in them, so it
+     * can count fewer than greedy does for the same chunk.
+     */
+    public int getSweptSliceCount() { return sweptSlices; }
+
+    /**
+     * The positions array - only the first getVertexCount() * 3 values are used.
+     */
+    public float[] getPositions() { return positions; }
+
+    /**
+     * The colors array - only the first getVertexCount() * 4 values are used.
+     */
+    public float[] getColors() { return colors; }
+
+    /**
+     * The indexes array of a layer - only the first getIndexCount(layer) values are used.
+     */
+    public int[] getIndexes(final RenderLayer layer) { return indexes[layer.ordinal()]; }
+}
@@ -0,0 +1,107 @@
+package mygame;
+
+/**
+ * This class emits a Java Flight Recorder event - a ChunkMeshEvent - for each chunk meshing job, so
+ * that recordings show which chunk was being meshed at any moment, and for how long.
+ *
+ * The events are only created when JFR is available in the JVM and the event is enabled in the
+ * recording - otherwise begin returns null, having done nothing more than check a flag, and commit
+ * does nothing.  The event is only ever referred to as an Object outside this class, so the classes
+ * of JFR are never loaded on a JVM which doesn't have them.
+ *
+ * The event is enabled by default, so any recording includes it - for example:
+ *
+ *    -XX:StartFlightRecording=filename=meshing.jfr
+ *
+ * and it can be switched off in the recording settings as mygame.ChunkMesh.
+ *
+ * @author Rob O'Leary
+ */
+public final class MeshEvents {
+
+    private static final boolean AVAILABLE = available();
+
+    private MeshEvents() {}
+
+    /**
+     * This function starts the event for a meshing job, returning null if it isn't being recorded.
+     *
+     * @return
+     */
+    public static Object begin() {
+
+        if (!AVAILABLE) {
+            return null;
+        }
+
+        final ChunkMeshEvent event = new ChunkMeshEvent();
+
+        if (!event.isEnabled()) {
+            return null;
+        }
+
+        event.begin();
+
+        return event;
+    }
+
+    /**
+     * This function ends the event begun for a meshing job and commits it to the recording -
+     * if the event is null, nothing is recorded.
+     *
+     * @param event
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     * @param chunk
+     * @param mesher the name of the mesher
+     * @param buffer
+     */
+    public static void commit(final Object event,
+                              final int chunkX,
+                              final int chunkY,
+                              final int chunkZ,
+                              final Chunk chunk,
+                              final String mesher,
+                              final MeshBuffer buffer) {
+
+        if (event == null) {
+            return;
+        }
+
+        final ChunkMeshEvent meshEvent = (ChunkMeshEvent) event;
+
+        meshEvent.end();
+
+        if (meshEvent.shouldCommit()) {
+
+            meshEvent.chunkX = chunkX;
+            meshEvent.chunkY = chunkY;
+            meshEvent.chunkZ = chunkZ;
+            meshEvent.width = chunk.getWidth();
+            meshEvent.height = chunk.getHeight();
+            meshEvent.depth = chunk.getDepth();
+            meshEvent.quads = buffer.getQuadCount();
+            meshEvent.vertices = buffer.getVertexCount();
+            meshEvent.directions = buffer.getSweptDirectionCount();
+            meshEvent.slices = buffer.getSweptSliceCount();
+            meshEvent.mesher = mesher;
+
+            meshEvent.commit();
+        }
+    }
+
+    private static boolean available() {
+
+        try {
+
+            Class.forName("jdk.jfr.Event");
+            return true;
+
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package mygame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * These are the working buffers of the meshers - the mask and the scratch list of quads of greedy(),
+ * the buffers of its fork/join tasks, and the bitmasks of binaryGreedy() - kept in a pool per thread,
+ * so that meshing a chunk doesn't allocate them afresh every time.
+ *
+ * The pool of each thread holds a set of buffers for each mask size it's asked for - a thread meshing
+ * chunks of a few different sizes keeps a set for each, so the chunk size can change at runtime
+ * without the buffers of one size being regrown for the other.  A set is only ever used by the thread
+ * which took it, and the meshers never mesh two slices on one thread at once, so the buffers need no
+ * locking - but they mustn't be kept or handed to another thread.  The one exception is the task
+ * buffers, which the workers of a fork/join pool write into while the thread which took them waits
+ * for the tasks to finish.
+ *
+ * @author Rob O'Leary
+ */
+final class MeshScratch {
+
+    private static final ThreadLocal<Map<Integer, MeshScratch>> POOL = new ThreadLocal<Map<Integer, MeshScratch>>() {
+
+        @Override
+        protected Map<Integer, MeshScratch> initialValue() {
+
+            return new HashMap<Integer, MeshScratch>();
+        }
+    };
+
+    /*
+     * The mask holds a cell for every voxel of a slice, and the quads QUAD_INTS ints for each cell.
+     */
+    final int[] mask;
+    final int[] quads;
+
+    /*
+     * The bitmasks of binaryGreedy() are sized by the palette of the chunk as well, so they grow as
+     * needed - the column masks, the planes of exposed faces and the layers of the planes which hold
+     * any, and the slot of each palette entry and the palette entry of each slot.
+     */
+    private long[] rows = new long[0];
+    private long[] planes = new long[0];
+    private long[] layers = new long[0];
+    private int[] slots = new int[0];
+    private int[] keys = new int[0];
+
+    /*
+     * These are the buffers of the fork/join tasks, one per task - they start empty and grow with
+     * the quads of their task.
+     */
+    private final List<MeshBuffer> buffers = new ArrayList<MeshBuffer>();
+
+    private MeshScratch(final int cells) {
+
+        this.mask = new int [cells];
+        this.quads = new int [cells * ChunkMesher.QUAD_INTS];
+    }
+
+    /**
+     * This function returns the current thread's buffers for masks of the given number of cells.
+     *
+     * @param cells
+     * @return
+     */
+    static MeshScratch get(final int cells) {
+
+        final Map<Integer, MeshScratch> pool = POOL.get();
+
+        MeshScratch scratch = pool.get(cells);
+
+        if (scratch == null) {
+            scratch = new MeshScratch(cells);
+            pool.put(cells, scratch);
+        }
+
+        return scratch;
+    }
+
+    /**
+     * This function returns the current thread's buffers big enough for any slice of the chunk.
+     *
+     * @param chunk
+     * @return
+     */
+    static MeshScratch get(final Chunk chunk) {
+
+        return get(ChunkMesher.maskSize(chunk));
+    }
+
+    /**
+     * This function returns the row masks, holding at least the given number of longs - the first
+     * length of them cleared.
+     *
+     * @param length
+     * @return
+     */
+    long[] rows(final int length) {
+
+        if (rows.length < length) {
+            rows = new long[length];
+        } else {
+            Arrays.fill(rows, 0, length, 0);
+        }
+
+        return rows;
+    }
+
+    /**
+     * This function returns the planes, holding at least the given number of longs.  They aren't
+     * cleared - binaryGreedy() leaves them empty when it's done with them.
+     *
+     * @param length
+     * @return
+     */
+    long[] planes(final int length) {
+
+        if (planes.length < length) {
+            planes = new long[length];
+        }
+
+        return planes;
+    }
+
+    /**
+     * This function returns the layers of the planes - see planes.
+     *
+     * @param length
+     * @return
+     */
+    long[] layers(final int length) {
+
+        if (layers.length < length) {
+            layers = new long[length];
+        }
+
+        return layers;
+    }
+
+    int[] slots(final int length) {
+
+        if (slots.length < length) {
+            slots = new int[length];
+        }
+
+        return slots;
+    }
+
+    int[] keys(final int length) {
+
+        if (keys.length < length) {
+            keys = new int[length];
+        }
+
+        return keys;
+    }
+
+    /**
+     * This function returns the buffer of the given fork/join task, for quads of the given voxel size.
+     *
+     * @param task
+     * @param voxelSize
+     * @return
+     */
+    MeshBuffer buffer(final int task, final float voxelSize) {
+
+        while (buffers.size() <= task) {
+            buffers.add(null);
+        }
+
+        MeshBuffer buffer = buffers.get(task);
+
+        if (buffer == null || buffer.getVoxelSize() != voxelSize) {
+            buffer = new MeshBuffer(voxelSize, 0);
+            buffers.set(task, buffer);
+        }
+
+        return buffer;
+    }
+}
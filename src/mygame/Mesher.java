@@ -0,0 +1,31 @@
+package mygame;
+
+/**
+ * This is a meshing algorithm - it takes the voxel data of a chunk and writes quads for its visible
+ * faces into a MeshBuffer.  Every mesher takes the same chunks and produces the same kind of buffer,
+ * so they can be swapped for one another - see MesherType for the ones available.
+ *
+ * Meshers only read the chunk, and keep no state between chunks, so a single instance can mesh any
+ * number of chunks concurrently, as long as each thread writes into its own MeshBuffer.
+ *
+ * @author Rob O'Leary
+ */
+public interface Mesher {
+
+    /**
+     * This function meshes a chunk, writing the quads into the given buffer - which is cleared
+     * first - and returning it.
+     *
+     * @param chunk
+     * @param buffer
+     * @return
+     */
+    MeshBuffer mesh(Chunk chunk, MeshBuffer buffer);
+
+    /**
+     * The name of the algorithm, as it appears in events and logs.
+     *
+     * @return
+     */
+    String getName();
+}
@@ -0,0 +1,75 @@
+package mygame;
+
+/**
+ * These are the meshing algorithms available, so that one can be picked at runtime - by name, for
+ * example from a setting - with valueOf.
+ *
+ * @author Rob O'Leary
+ */
+public enum MesherType {
+
+    /**
+     * The greedy mesher - ChunkMesher.greedy().  The fewest triangles, from merging faces cell by cell.
+     */
+    GREEDY {
+        @Override
+        public Mesher create(final MeshingMetrics metrics) {
+
+            return new ChunkMesher(ChunkMesher.Parallelism.NONE, null, metrics);
+        }
+    },
+
+    /**
+     * The same quads as GREEDY, merged with bitmasks - ChunkMesher.binaryGreedy().  Only for chunks
+     * up to 64 voxels along every axis.
+     */
+    BINARY {
+        @Override
+        public Mesher create(final MeshingMetrics metrics) {
+
+            return new ChunkMesher(ChunkMesher.Parallelism.NONE, null, metrics).binary();
+        }
+    },
+
+    /**
+     * A quad for every exposed face - see CulledMesher.
+     */
+    CULLED {
+        @Override
+        public Mesher create(final MeshingMetrics metrics) {
+
+            return new CulledMesher(metrics);
+        }
+    },
+
+    /**
+     * A quad for every face of every voxel - see NaiveMesher.
+     */
+    NAIVE {
+        @Override
+        public Mesher create(final MeshingMetrics metrics) {
+
+            return new NaiveMesher(metrics);
+        }
+    },
+
+    /**
+     * Whichever of GREEDY, BINARY and CULLED suits each chunk - see AdaptiveMesher.
+     */
+    ADAPTIVE {
+        @Override
+        public Mesher create(final MeshingMetrics metrics) {
+
+            return new AdaptiveMesher(metrics);
+        }
+    };
+
+    /**
+     * This function creates a mesher of this type which meshes each chunk on the calling thread,
+     * recording the cost of meshing in the given metrics - or none if they're null.
+     *
+     * @param metrics
+     * @return
+     */
+    public abstract Mesher create(MeshingMetrics metrics);
+}
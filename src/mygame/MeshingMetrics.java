@@ -0,0 +1,271 @@
+package mygame;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * This class collects the cost of meshing chunks - for each chunk meshed, the time spent in each
+ * phase of greedy meshing, the quads and vertices produced and the bytes allocated, and for each
+ * chunk meshed by a ChunkMeshingService, the time the job waited in the queue.  Every metric is kept
+ * as a Histogram of the per-chunk values, whose total is the aggregate over all chunks.
+ *
+ * The phases of greedy() are building the mask of each slice, merging the mask into quads, and
+ * emitting the vertices of the quads into the buffer.  The times are summed over all the slices of
+ * the chunk - when a chunk is meshed in parallel, they're summed over all the threads, so they can
+ * add up to more than the meshing time.  binaryGreedy() and the other meshers only record the
+ * meshing time.  The bytes allocated are only counted on the thread which meshed the chunk, and
+ * only where the JVM can measure them.
+ *
+ * When chunks are meshed by an AdaptiveMesher, the metrics also count how many chunks it routed to
+ * each mesher.
+ *
+ * Metrics are only collected by a mesher created with them, and register publishes them
+ * through JMX.  Recording never locks, so a single instance can be shared by all the meshing threads.
+ *
+ * @author Rob O'Leary
+ */
+public class MeshingMetrics implements MeshingMetricsMBean {
+
+    /*
+     * These are the indexes of the phases in the timings passed to record.
+     */
+    public static final int MASK  = 0;
+    public static final int MERGE = 1;
+    public static final int EMIT  = 2;
+    public static final int PHASES = 3;
+
+    private final Histogram meshTime       = new Histogram();
+    private final Histogram maskTime       = new Histogram();
+    private final Histogram mergeTime      = new Histogram();
+    private final Histogram emitTime       = new Histogram();
+    private final Histogram queueTime      = new Histogram();
+    private final Histogram quads          = new Histogram();
+    private final Histogram vertices       = new Histogram();
+    private final Histogram allocatedBytes = new Histogram();
+
+    /*
+     * These are the chunks routed to each type of mesher, indexed by MesherType ordinal.
+     */
+    private final AtomicLongArray routes = new AtomicLongArray(MesherType.values().length);
+
+    private ObjectName name;
+
+    /**
+     * This function records the meshing of a single chunk.  Any phase timing, or the bytes
+     * allocated, can be -1 where they weren't measured.
+     *
+     * @param nanos the time taken to mesh the chunk
+     * @param timings the time spent in each phase, indexed by MASK, MERGE and EMIT - or null
+     * @param quadCount
+     * @param vertexCount
+     * @param bytes
+     */
+    public void record(final long nanos,
+                       final long[] timings,
+                       final int quadCount,
+                       final int vertexCount,
+                       final long bytes) {
+
+        meshTime.record(nanos);
+
+        if (timings != null) {
+            maskTime.record(timings[MASK]);
+            mergeTime.record(timings[MERGE]);
+            emitTime.record(timings[EMIT]);
+        }
+
+        quads.record(quadCount);
+        vertices.record(vertexCount);
+        allocatedBytes.record(bytes);
+    }
+
+    /**
+     * This function records the meshing of a single chunk into the given buffer, which started at
+     * the given time, with the given bytes allocated by the thread - see allocatedBytes.
+     *
+     * @param start
+     * @param allocated
+     * @param timings the time spent in each phase, indexed by MASK, MERGE and EMIT - or null
+     * @param buffer
+     */
+    public void record(final long start, final long allocated, final long[] timings, final MeshBuffer buffer) {
+
+        final long nanos = System.nanoTime() - start;
+        final long allocatedAfter = allocatedBytes();
+
+        record(nanos,
+               timings,
+               buffer.getQuadCount(),
+               buffer.getVertexCount(),
+               allocated < 0 || allocatedAfter < 0 ? -1 : allocatedAfter - allocated);
+    }
+
+    /**
+     * This function records the time a meshing job waited between being submitted and starting.
+     *
+     * @param nanos
+     */
+    public void recordQueueWait(final long nanos) {
+
+        queueTime.record(nanos);
+    }
+
+    /**
+     * This function records that a chunk was routed to the given type of mesher, by an AdaptiveMesher.
+     *
+     * @param type
+     */
+    public void recordRoute(final MesherType type) {
+
+        routes.incrementAndGet(type.ordinal());
+    }
+
+    /**
+     * The number of chunks routed to the given type of mesher.
+     *
+     * @param type
+     * @return
+     */
+    public long getRouteCount(final MesherType type) { return routes.get(type.ordinal()); }
+
+    public long getGreedyRouteCount() { return getRouteCount(MesherType.GREEDY); }
+
+    public long getBinaryRouteCount() { return getRouteCount(MesherType.BINARY); }
+
+    public long getCulledRouteCount() { return getRouteCount(MesherType.CULLED); }
+
+    public Histogram getMeshTime() { return meshTime; }
+
+    public Histogram getMaskTime() { return maskTime; }
+
+    public Histogram getMergeTime() { return mergeTime; }
+
+    public Histogram getEmitTime() { return emitTime; }
+
+    public Histogram getQueueTime() { return queueTime; }
+
+    public Histogram getQuads() { return quads; }
+
+    public Histogram getVertices() { return vertices; }
+
+    public Histogram getAllocated() { return allocatedBytes; }
+
+    public long getChunkCount() { return meshTime.getCount(); }
+
+    public long getQuadCount() { return quads.getTotal(); }
+
+    public long getVertexCount() { return vertices.getTotal(); }
+
+    public long getAllocatedBytes() { return allocatedBytes.getTotal(); }
+
+    public void reset() {
+
+        for (Histogram histogram : histograms().values()) {
+            histogram.reset();
+        }
+
+        for (int route = 0; route < routes.length(); route++) {
+            routes.set(route, 0);
+        }
+    }
+
+    /**
+     * This function publishes the metrics on the platform MBean server, as mygame:type=MeshingMetrics
+     * with the given name - each histogram is published under the same name, with the metric as well.
+     *
+     * @param name
+     */
+    public synchronized void register(final String name) {
+
+        try {
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            this.name = new ObjectName("mygame:type=MeshingMetrics,name=" + ObjectName.quote(name));
+
+            server.registerMBean(this, this.name);
+
+            for (Map.Entry<String, Histogram> histogram : histograms().entrySet()) {
+
+                server.registerMBean(histogram.getValue(), metricName(histogram.getKey()));
+            }
+
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't register meshing metrics " + name, e);
+        }
+    }
+
+    /**
+     * This function removes the metrics from the platform MBean server, if they were registered.
+     */
+    public synchronized void unregister() {
+
+        if (name == null) {
+            return;
+        }
+
+        try {
+
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+            for (String metric : histograms().keySet()) {
+                server.unregisterMBean(metricName(metric));
+            }
+
+            server.unregisterMBean(name);
+
+        } catch (JMException e) {
+            throw new IllegalStateException("Couldn't unregister meshing metrics " + name, e);
+        }
+
+        name = null;
+    }
+
+    /**
+     * The bytes allocated so far by the current thread, or -1 if the JVM can't tell.
+     *
+     * @return
+     */
+    public static long allocatedBytes() {
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+
+            final com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+
+            if (hotspot.isThreadAllocatedMemorySupported() && hotspot.isThreadAllocatedMemoryEnabled()) {
+                return hotspot.getThreadAllocatedBytes(Thread.currentThread().getId());
+            }
+        }
+
+        return -1;
+    }
+
+    private ObjectName metricName(final String metric) throws JMException {
+
+        return new ObjectName(name.toString() + ",metric=" + metric);
+    }
+
+    private Map<String, Histogram> histograms() {
+
+        final Map<String, Histogram> histograms = new LinkedHashMap<String, Histogram>();
+
+        histograms.put("meshTime",       meshTime);
+        histograms.put("maskTime",       maskTime);
+        histograms.put("mergeTime",      mergeTime);
+        histograms.put("emitTime",       emitTime);
+        histograms.put("queueTime",      queueTime);
+        histograms.put("quads",          quads);
+        histograms.put("vertices",       vertices);
+        histograms.put("allocatedBytes", allocatedBytes);
+
+        return histograms;
+    }
+}
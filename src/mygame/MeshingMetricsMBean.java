@@ -0,0 +1,26 @@
+package mygame;
+
+/**
+ * This is the management interface of MeshingMetrics - the histograms of each metric are
+ * registered as MBeans of their own alongside it.
+ *
+ * @author Rob O'Leary
+ */
+public interface MeshingMetricsMBean {
+
+    long getChunkCount();
+
+    long getQuadCount();
+
+    long getVertexCount();
+
+    long getAllocatedBytes();
+
+    long getGreedyRouteCount();
+
+    long getBinaryRouteCount();
+
+    long getCulledRouteCount();
+
+    void reset();
+}
@@ -0,0 +1,77 @@
+package mygame;
+
+/**
+ * This mesher produces a quad for all 6 faces of every voxel which isn't empty or transparent,
+ * whether the face can be seen or not.  It's here as a baseline for the other meshers - it costs the
+ * least to compute of all, but draws by far the most triangles.
+ *
+ * @author Rob O'Leary
+ */
+public class NaiveMesher implements Mesher {
+
+    private final MeshingMetrics metrics;
+
+    public NaiveMesher() {
+
+        this(null);
+    }
+
+    /**
+     * Creates a mesher which records the cost of meshing every chunk in the given metrics - or
+     * none if they're null.
+     *
+     * @param metrics
+     */
+    public NaiveMesher(final MeshingMetrics metrics) {
+
+        this.metrics = metrics;
+    }
+
+    public String getName() { return "naive"; }
+
+    public MeshBuffer mesh(final Chunk chunk, final MeshBuffer buffer) {
+
+        final long allocated = metrics == null ? 0 : MeshingMetrics.allocatedBytes();
+        final long start = metrics == null ? 0 : System.nanoTime();
+
+        buffer.clear();
+
+        final int width = chunk.getWidth();
+        final int height = chunk.getHeight();
+        final int depth = chunk.getDepth();
+
+        final int[] x = new int []{0,0,0};
+        final int[] du = new int[]{0,0,0};
+        final int[] dv = new int[]{0,0,0};
+
+        for (int z = 0; z < depth; z++) {
+
+            for (int y = 0; y < height; y++) {
+
+                for (int i = 0; i < width; i++) {
+
+                    final int key = chunk.get(i, y, z);
+
+                    if (key == 0 || VoxelFace.isTransparent(key)) {
+                        continue;
+                    }
+
+                    for (int side = 0; side < 6; side++) {
+
+                        x[0] = i;
+                        x[1] = y;
+                        x[2] = z;
+
+                        buffer.quad(CulledMesher.unitQuad(side, x, du, dv), du, dv, VoxelFace.withSide(key, side), CulledMesher.isBackFace(side));
+                    }
+                }
+            }
+        }
+
+        if (metrics != null) {
+            metrics.record(start, allocated, null, buffer);
+        }
+
+        return buffer;
+    }
+}
@@ -0,0 +1,28 @@
+package mygame;
+
+/**
+ * These are the render layers a voxel face can be drawn in - each chunk is drawn as a separate
+ * mesh per layer, so that the layers can be rendered differently:
+ *
+ *  - OPAQUE faces hide everything behind them, so they're drawn front to back with depth writes,
+ *    and never need sorting,
+ *  - CUTOUT faces are either fully opaque or fully see-through at each pixel - leaves, or fences -
+ *    so they're drawn like opaque faces, but with the see-through pixels discarded,
+ *  - TRANSLUCENT faces - water, or glass - are blended over what's behind them, so they have to be
+ *    drawn after everything else, sorted back to front.
+ *
+ * Keeping the faces apart means only the translucent mesh of each chunk - usually a small part of
+ * it - needs sorting every frame.
+ *
+ * The layer of a face is part of its key (see VoxelFace), so faces in different layers are never
+ * merged into the same quad.  The ordinal of each layer is stored in the key, so new layers must
+ * only be added at the end.
+ *
+ * @author Rob O'Leary
+ */
+public enum RenderLayer {
+
+    OPAQUE,
+    CUTOUT,
+    TRANSLUCENT
+}
@@ -0,0 +1,310 @@
+package mygame;
+
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * This class generates terrain to fill chunks with - rolling hills from a fractal noise heightmap,
+ * grass over a few layers of dirt over stone, with winding caves and veins of ore through the stone.
+ * The terrain is a function of the world position and the seed only, so the same seed always gives
+ * the same world, whatever size the chunks are and whatever order they're generated in.
+ *
+ * The types of the voxels are:
+ *
+ *  - 1 : grass
+ *  - 2 : dirt
+ *  - 3 : stone
+ *  - 4 : coal
+ *  - 5 : iron
+ *
+ * The generator is immutable, so any number of chunks can be generated with it at once - see submit.
+ *
+ * @author Rob O'Leary
+ */
+public class TerrainGenerator {
+
+    public static final int GRASS = 1;
+    public static final int DIRT  = 2;
+    public static final int STONE = 3;
+    public static final int COAL  = 4;
+    public static final int IRON  = 5;
+
+    /*
+     * These are the scales of the features, in voxels - roughly the width of a hill, and the
+     * distance over which the caves and the ore veins wind.
+     */
+    private static final double HILL_SCALE = 96;
+    private static final double CAVE_SCALE = 48;
+    private static final double ORE_SCALE  = 12;
+
+    /*
+     * A cave runs wherever two noise fields are both close to 0, which makes long tunnels - the
+     * larger this is, the wider the tunnels.
+     */
+    private static final double CAVE_WIDTH = 0.08;
+
+    private static final int DIRT_DEPTH = 3;
+
+    /*
+     * Iron only appears this far below the surface.
+     */
+    private static final int IRON_DEPTH = 24;
+
+    private final GradientNoise hills;
+    private final GradientNoise caves;
+    private final GradientNoise caves1;
+    private final GradientNoise ore;
+
+    /*
+     * Gradient noise is 0 at every point of its integer lattice, so the two cave fields sampled at the
+     * same coordinates would both be 0 - and carve a cave - every CAVE_SCALE voxels, for any seed.  So
+     * each field is sampled at an offset of its own, a fraction of a lattice cell along each axis drawn
+     * from the seed - the first three for the first field, and the rest for the second - and the
+     * lattices fall somewhere different in the world for every seed.
+     */
+    private final double[] caveOffsets = new double[6];
+
+    private final int baseHeight;
+    private final int amplitude;
+
+    /*
+     * The faces of each type - chunks only keep the packed keys, so these are shared by every voxel.
+     */
+    private final VoxelFace[] faces = new VoxelFace[IRON + 1];
+
+    /**
+     * Creates a generator whose hills roll from 32 voxels below to 32 voxels above height 64.
+     *
+     * @param seed
+     */
+    public TerrainGenerator(final long seed) {
+
+        this(seed, 64, 32);
+    }
+
+    /**
+     * Creates a generator whose hills roll up to amplitude voxels either side of the base height.
+     *
+     * @param seed
+     * @param baseHeight
+     * @param amplitude
+     */
+    public TerrainGenerator(final long seed, final int baseHeight, final int amplitude) {
+
+        this.hills  = new GradientNoise(seed);
+        this.caves  = new GradientNoise(seed + 1);
+        this.caves1 = new GradientNoise(seed + 2);
+        this.ore    = new GradientNoise(seed + 3);
+
+        final Random random = new Random(seed);
+
+        for (int i = 0; i < caveOffsets.length; i++) {
+            caveOffsets[i] = random.nextDouble();
+        }
+
+        this.baseHeight = baseHeight;
+        this.amplitude = amplitude;
+
+        for (int type = GRASS; type <= IRON; type++) {
+
+            faces[type] = new VoxelFace();
+            faces[type].type = type;
+        }
+    }
+
+    /**
+     * This function creates the cubic chunk at the given chunk coordinates - so the chunk at 1,0,0
+     * starts at world position size,0,0.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     * @param size
+     * @return
+     */
+    public Chunk generate(final int chunkX, final int chunkY, final int chunkZ, final int size) {
+
+        return generate(chunkX, chunkY, chunkZ, size, size, size);
+    }
+
+    /**
+     * This function creates the chunk of the given width, height and depth at the given chunk
+     * coordinates - so a 16x256x16 chunk at 1,0,2 starts at world position 16,0,32.
+     *
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     * @param width
+     * @param height
+     * @param depth
+     * @return
+     */
+    public Chunk generate(final int chunkX,
+                          final int chunkY,
+                          final int chunkZ,
+                          final int width,
+                          final int height,
+                          final int depth) {
+
+        final Chunk chunk = new Chunk(width, height, depth);
+
+        fill(chunk, chunkX, chunkY, chunkZ);
+
+        return chunk;
+    }
+
+    /**
+     * This function generates a cubic chunk as a job on the executor.  The generator can be shared by
+     * any number of jobs, so a pool of threads can fill many chunks at once.
+     *
+     * @param executor
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     * @param size
+     * @return the job, which completes with the chunk
+     */
+    public Future<Chunk> submit(final ExecutorService executor,
+                                final int chunkX,
+                                final int chunkY,
+                                final int chunkZ,
+                                final int size) {
+
+        return submit(executor, chunkX, chunkY, chunkZ, size, size, size);
+    }
+
+    /**
+     * This function generates a chunk of the given width, height and depth as a job on the executor.
+     *
+     * @param executor
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     * @param width
+     * @param height
+     * @param depth
+     * @return the job, which completes with the chunk
+     */
+    public Future<Chunk> submit(final ExecutorService executor,
+                                final int chunkX,
+                                final int chunkY,
+                                final int chunkZ,
+                                final int width,
+                                final int height,
+                                final int depth) {
+
+        return executor.submit(new Callable<Chunk>() {
+
+            public Chunk call() {
+
+                return generate(chunkX, chunkY, chunkZ, width, height, depth);
+            }
+        });
+    }
+
+    /**
+     * This function fills a chunk with the terrain at the given chunk coordinates - each is
+     * multiplied by the size of the chunk along its axis to find the world position.  The padding
+     * of the chunk is filled from the terrain too, so the faces on the border are culled against
+     * the neighbouring chunks without them having to be generated first.
+     *
+     * @param chunk
+     * @param chunkX
+     * @param chunkY
+     * @param chunkZ
+     */
+    public void fill(final Chunk chunk, final int chunkX, final int chunkY, final int chunkZ) {
+
+        final int width = chunk.getWidth();
+        final int depth = chunk.getDepth();
+
+        final int originX = chunkX * width;
+        final int originY = chunkY * chunk.getHeight();
+        final int originZ = chunkZ * depth;
+
+        for (int x = -1; x <= width; x++) {
+
+            for (int z = -1; z <= depth; z++) {
+
+                final int height = height(originX + x, originZ + z);
+
+                for (int y = -1; y <= chunk.getHeight(); y++) {
+
+                    /*
+                     * The edges and corners of the padding are never read by the mesher.
+                     */
+                    final int outside = (x < 0 || x == width             ? 1 : 0)
+                                      + (y < 0 || y == chunk.getHeight() ? 1 : 0)
+                                      + (z < 0 || z == depth             ? 1 : 0);
+
+                    if (outside > 1) {
+                        continue;
+                    }
+
+                    final int type = type(originX + x, originY + y, originZ + z, height);
+
+                    chunk.set(x, y, z, type == 0 ? null : faces[type]);
+                }
+            }
+        }
+    }
+
+    /**
+     * The height of the surface at a world position - the highest voxel which isn't air.
+     *
+     * @param x
+     * @param z
+     * @return
+     */
+    public int height(final int x, final int z) {
+
+        return baseHeight + (int) Math.round(amplitude * hills.fractal(x / HILL_SCALE, 0.5, z / HILL_SCALE, 4));
+    }
+
+    /**
+     * The type of the voxel at a world position, or 0 for air.
+     *
+     * @param x
+     * @param y
+     * @param z
+     * @return
+     */
+    public int type(final int x, final int y, final int z) {
+
+        return type(x, y, z, height(x, z));
+    }
+
+    private int type(final int x, final int y, final int z, final int height) {
+
+        if (y > height) {
+            return 0;
+        }
+
+        /*
+         * The caves only open onto the surface through the dirt, never through the grass.
+         */
+        if (y < height
+            && Math.abs(caves.noise(x / CAVE_SCALE + caveOffsets[0], y / CAVE_SCALE + caveOffsets[1], z / CAVE_SCALE + caveOffsets[2])) < CAVE_WIDTH
+            && Math.abs(caves1.noise(x / CAVE_SCALE + caveOffsets[3], y / CAVE_SCALE + caveOffsets[4], z / CAVE_SCALE + caveOffsets[5])) < CAVE_WIDTH) {
+            return 0;
+        }
+
+        if (y == height) {
+            return GRASS;
+        }
+
+        if (y > height - DIRT_DEPTH) {
+            return DIRT;
+        }
+
+        final double vein = ore.noise(x / ORE_SCALE, y / ORE_SCALE, z / ORE_SCALE);
+
+        if (vein > 0.55) {
+            return y < height - IRON_DEPTH ? IRON : COAL;
+        }
+
+        return STONE;
+    }
+}
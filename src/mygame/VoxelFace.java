@@ -0,0 +1,78 @@
+package mygame;
+
+/**
+ * This class is used to encapsulate all information about a single voxel face.  Any number of attributes can be
+ * included - and the equals function will be called in order to compare faces.  This is important because it
+ * allows different faces of the same voxel to be merged based on varying attributes.
+ *
+ * Each face can contain vertex data - for example, int[] sunlight, in order to compare vertex attributes.
+ *
+ * Since it's optimal to combine greedy meshing with face culling, I have included a "transparent" attribute here
+ * and the mesher skips transparent voxel faces.  Whatever fills the chunk data when this algorithm is used in a
+ * real engine could set the transparent attribute on faces based on whether they should be visible or not.
+ *
+ * Faces which are drawn can be in one of several render layers - opaque, cutout or translucent (see RenderLayer).
+ * Each layer of a chunk is drawn as a mesh of its own, in its own render bucket.
+ *
+ * The chunk data holds each face packed into a single int key, so that the innermost loops of the
+ * mesher compare primitives rather than calling equals on objects.  Every attribute compared in equals must have
+ * its own bits in the key - so if you add attributes here, add them to pack as well.  The layout is:
+ *
+ *  - bit 0       : always set, so that a key of 0 means "no voxel" in the chunk and "no face" in the mask
+ *  - bit 1       : transparent
+ *  - bits 2 - 4  : side
+ *  - bits 5 - 6  : render layer - 0 is opaque, so the keys of opaque faces are unaffected
+ *  - bits 8 - 31 : type
+ *
+ * The mesher never writes to a VoxelFace - the side being meshed only ever goes into the key - so the same
+ * instances can be meshed by several threads at once.
+ *
+ * @author Rob O'Leary
+ */
+public class VoxelFace {
+
+    /*
+     * These are just constants to keep track of which face we're dealing with - their actual
+     * values are unimportantly - only that they're constant.
+     */
+    public static final int SOUTH      = 0;
+    public static final int NORTH      = 1;
+    public static final int EAST       = 2;
+    public static final int WEST       = 3;
+    public static final int TOP        = 4;
+    public static final int BOTTOM     = 5;
+
+    private static final int PRESENT_BIT      = 1;
+    private static final int TRANSPARENT_BIT  = 1 << 1;
+    private static final int SIDE_SHIFT       = 2;
+    private static final int LAYER_SHIFT      = 5;
+    private static final int TYPE_SHIFT       = 8;
+
+    public boolean transparent;
+    public int type;
+    public RenderLayer layer = RenderLayer.OPAQUE;
+
+    public boolean equals(final VoxelFace face) { return face.transparent == this.transparent && face.type == this.type && face.layer == this.layer; }
+
+    /**
+     * This function packs the attributes of the face into a key - two faces have the same
+     * key exactly when they are equal and on the same side.
+     *
+     * @param side
+     * @return
+     */
+    public int pack(final int side) { return PRESENT_BIT | (transparent ? TRANSPARENT_BIT : 0) | (side << SIDE_SHIFT) | (layer.ordinal() << LAYER_SHIFT) | (type << TYPE_SHIFT); }
+
+    public static boolean isTransparent(final int key) { return (key & TRANSPARENT_BIT) != 0; }
+
+    public static int side(final int key) { return (key >>> SIDE_SHIFT) & 7; }
+
+    public static int type(final int key) { return key >>> TYPE_SHIFT; }
+
+    /**
+     * The ordinal of the render layer of a key - see RenderLayer.
+     */
+    public static int layer(final int key) { return (key >>> LAYER_SHIFT) & 3; }
+
+    public static int withSide(final int key, final int side) { return (key & ~(7 << SIDE_SHIFT)) | (side << SIDE_SHIFT); }
+}